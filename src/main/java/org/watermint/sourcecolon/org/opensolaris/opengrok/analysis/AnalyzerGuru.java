@@ -26,6 +26,7 @@ package org.watermint.sourcecolon.org.opensolaris.opengrok.analysis;
 import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.watermint.sourcecolon.filetype.TokenizerPlugin;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.FileAnalyzer.Genre;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.archive.BZip2AnalyzerFactory;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.archive.GZIPAnalyzerFactory;
@@ -58,6 +59,8 @@ import org.watermint.sourcecolon.org.opensolaris.opengrok.web.Util;
 
 import java.io.*;
 import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Manages and provides Analyzers as needed. Please see
@@ -70,6 +73,8 @@ import java.util.*;
  */
 public class AnalyzerGuru {
 
+    private static final Logger log = Logger.getLogger(AnalyzerGuru.class.getName());
+
     /**
      * The default {@code FileAnalyzerFactory} instance.
      */
@@ -88,12 +93,22 @@ public class AnalyzerGuru {
     private static final Map<String, FileAnalyzerFactory>
             ext = new HashMap<>();
 
-    // @TODO: have a comparator
     /**
-     * Map from magic strings to analyzer factories.
+     * Magic numbers of analyzer factories.
      */
-    private static final SortedMap<String, FileAnalyzerFactory>
-            magics = new TreeMap<>();
+    private static final MagicTrie magics = new MagicTrie();
+
+    /**
+     * Byte-order markers.
+     */
+    private static final Map<String, byte[]> BOMS =
+            new HashMap<>();
+
+    static {
+        BOMS.put("UTF-8", new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
+        BOMS.put("UTF-16BE", new byte[]{(byte) 0xFE, (byte) 0xFF});
+        BOMS.put("UTF-16LE", new byte[]{(byte) 0xFF, (byte) 0xFE});
+    }
 
     /**
      * List of matcher objects which can be used to determine which analyzer
@@ -162,14 +177,63 @@ public class AnalyzerGuru {
                     "suffix '" + suffix + "' used in multiple analyzers";
         }
         for (String magic : factory.getMagicStrings()) {
-            FileAnalyzerFactory old = magics.put(magic, factory);
-            assert old == null :
+            boolean added = addMagic(magic, factory);
+            assert added :
                     "magic '" + magic + "' used in multiple analyzers";
         }
         matchers.addAll(factory.getMatchers());
         factories.add(factory);
     }
 
+    /**
+     * Add a magic string of an analyzer factory. Text files may also start
+     * with a byte-order marker, followed by the magic string in the encoding
+     * of the marker.
+     *
+     * @return false if the magic string was registered already
+     */
+    private static boolean addMagic(String magic, FileAnalyzerFactory factory) {
+        try {
+            // the magic strings are ISO-8859-1
+            boolean added = magics.add(magic.getBytes("ISO-8859-1"), factory);
+            if (factory.getGenre() == Genre.PLAIN) {
+                for (Map.Entry<String, byte[]> bom : BOMS.entrySet()) {
+                    byte[] encoded = magic.getBytes(bom.getKey());
+                    byte[] bytes = Arrays.copyOf(bom.getValue(), bom.getValue().length + encoded.length);
+                    System.arraycopy(encoded, 0, bytes, bom.getValue().length, encoded.length);
+                    magics.add(bytes, factory);
+                }
+            }
+            return added;
+        } catch (UnsupportedEncodingException e) {
+            // every JVM supports ISO-8859-1, UTF-8 and UTF-16
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Instruct the AnalyzerGuru to use a given analyzer for the magic numbers
+     * of a tokenizer plugin. Files which start with one of them are analyzed
+     * with that analyzer, unless their name tells otherwise.
+     * A magic number which is known already keeps its analyzer.
+     *
+     * @param plugin  the plugin which knows the magic numbers
+     * @param factory a factory which creates the analyzer to use for the
+     *                files
+     */
+    public static void addMagicNumbers(TokenizerPlugin plugin,
+                                       FileAnalyzerFactory factory) {
+        List<byte[]> magicNumbers = plugin.possibleMagicNumbers();
+        if (magicNumbers != null) {
+            for (byte[] magic : magicNumbers) {
+                if (!magics.add(magic, factory)) {
+                    log.log(Level.WARNING, "Magic number {0} of {1} used by another analyzer",
+                            new Object[]{Arrays.toString(magic), plugin.mimeType()});
+                }
+            }
+        }
+    }
+
     /**
      * Instruct the AnalyzerGuru to use a given analyzer for a given
      * file extension.
@@ -225,8 +289,24 @@ public class AnalyzerGuru {
      */
     public Document getDocument(File file, InputStream in, String path,
                                 FileAnalyzer fa) throws IOException {
+        return getDocument(file, file.lastModified(), in, path, fa);
+    }
+
+    /**
+     * Create a Lucene document and fill in the required fields
+     *
+     * @param file         The file to index
+     * @param lastModified The modification time of the file, if the caller
+     *                     already read the file attributes
+     * @param in           The data to generate the index for
+     * @param path         Where the file is located (from source root)
+     * @return The Lucene document to add to the index database
+     * @throws java.io.IOException If an exception occurs while collecting the data
+     */
+    public Document getDocument(File file, long lastModified, InputStream in,
+                                String path, FileAnalyzer fa) throws IOException {
         Document doc = new Document();
-        String date = DateTools.timeToString(file.lastModified(),
+        String date = DateTools.timeToString(lastModified,
                 DateTools.Resolution.MILLISECOND);
         doc.add(new Field("u", Util.path2uid(path, date),
                 Field.Store.YES, Field.Index.NOT_ANALYZED));
@@ -391,19 +471,24 @@ public class AnalyzerGuru {
      *                             the stream
      */
     public static FileAnalyzerFactory find(InputStream in) throws IOException {
-        in.mark(8);
-        byte[] content = new byte[8];
-        int len = in.read(content);
+        byte[] head = new byte[Math.max(8, magics.getMaxLength())];
+        in.mark(head.length);
+        int len = 0;
+        int n;
+        while (len < head.length && (n = in.read(head, len, head.length - len)) > 0) {
+            len += n;
+        }
         in.reset();
         if (len < 4) {
             return null;
         }
 
-        FileAnalyzerFactory factory = find(content);
+        FileAnalyzerFactory factory = magics.find(head, len);
         if (factory != null) {
             return factory;
         }
 
+        byte[] content = Arrays.copyOf(head, 8);
         for (FileAnalyzerFactory.Matcher matcher : matchers) {
             FileAnalyzerFactory fac = matcher.isMagic(content, in);
             if (fac != null) {
@@ -414,56 +499,6 @@ public class AnalyzerGuru {
         return null;
     }
 
-    /**
-     * Finds a suitable analyser class for a magic signature
-     *
-     * @param signature the magic signature look up
-     * @return the analyzer factory to use
-     */
-    private static FileAnalyzerFactory find(byte[] signature)
-            throws IOException {
-        // XXX this assumes ISO-8859-1 encoding (and should work in most cases
-        // for US-ASCII, UTF-8 and other ISO-8859-* encodings, but not always),
-        // we should try to be smarter than this...
-        char[] chars = new char[signature.length > 8 ? 8 : signature.length];
-        for (int i = 0; i < chars.length; i++) {
-            chars[i] = (char) (0xFF & signature[i]);
-        }
-
-        String sig = new String(chars);
-
-        FileAnalyzerFactory a = magics.get(sig);
-        if (a == null) {
-            String sigWithoutBOM = stripBOM(signature);
-            for (Map.Entry<String, FileAnalyzerFactory> entry :
-                    magics.entrySet()) {
-                if (sig.startsWith(entry.getKey())) {
-                    return entry.getValue();
-                }
-                // See if text files have the magic sequence if we remove the
-                // byte-order marker
-                if (sigWithoutBOM != null &&
-                        entry.getValue().getGenre() == Genre.PLAIN &&
-                        sigWithoutBOM.startsWith(entry.getKey())) {
-                    return entry.getValue();
-                }
-            }
-        }
-        return a;
-    }
-
-    /**
-     * Byte-order markers.
-     */
-    private static final Map<String, byte[]> BOMS =
-            new HashMap<>();
-
-    static {
-        BOMS.put("UTF-8", new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
-        BOMS.put("UTF-16BE", new byte[]{(byte) 0xFE, (byte) 0xFF});
-        BOMS.put("UTF-16LE", new byte[]{(byte) 0xFF, (byte) 0xFE});
-    }
-
     /**
      * Strip away the byte-order marker from the string, if it has one.
      *
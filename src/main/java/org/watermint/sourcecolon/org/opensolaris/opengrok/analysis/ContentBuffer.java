@@ -0,0 +1,209 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+package org.watermint.sourcecolon.org.opensolaris.opengrok.analysis;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The content of the file being analyzed, which an analyzer reads once for
+ * each field it indexes and once more for the xref. The characters up to a
+ * limit are kept in memory. The rest of a larger file is written to a
+ * temporary file and read again from there, so that the heap needed to
+ * analyze a file doesn't grow with its size.
+ */
+public final class ContentBuffer {
+
+    private static final Logger log = Logger.getLogger(ContentBuffer.class.getName());
+
+    private static final int INITIAL_SIZE = 64 * 1024;
+    private static final String SPILL_CHARSET = "UTF-8";
+
+    private char[] chars = new char[INITIAL_SIZE];
+    private int len;
+    private File spill;
+    private long spilled;
+    private final List<Reader> readers = new ArrayList<>();
+
+    /**
+     * Read the content of a file, replacing the content read before.
+     *
+     * @param in    the file to read, which isn't closed
+     * @param limit the number of characters to keep in memory
+     * @throws IOException if the file cannot be read, or the temporary file
+     *                     cannot be written
+     */
+    public void read(Reader in, int limit) throws IOException {
+        clear();
+        limit = Math.max(limit, INITIAL_SIZE);
+        while (true) {
+            if (len == chars.length) {
+                if (len >= limit) {
+                    break;
+                }
+                chars = Arrays.copyOf(chars, (int) Math.min(2L * len, limit));
+            }
+            int n = in.read(chars, len, chars.length - len);
+            if (n < 0) {
+                return;
+            }
+            len += n;
+        }
+
+        spill = File.createTempFile("opengrok-content", ".tmp");
+        try (Writer out = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(spill)), SPILL_CHARSET)) {
+            // keep a surrogate pair together, it cannot be encoded in halves
+            if (Character.isHighSurrogate(chars[len - 1])) {
+                out.write(chars[--len]);
+                spilled++;
+            }
+            char[] buf = new char[8192];
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                out.write(buf, 0, n);
+                spilled += n;
+            }
+        } catch (IOException e) {
+            clear();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the number of characters read.
+     *
+     * @return the length of the content
+     */
+    public long length() {
+        return len + spilled;
+    }
+
+    /**
+     * Check if the whole content is in memory.
+     *
+     * @return true if {@link #getChars()} holds all of the content
+     */
+    public boolean isInMemory() {
+        return spill == null;
+    }
+
+    /**
+     * Get the characters kept in memory, which are all of the content if
+     * {@link #isInMemory()}.
+     *
+     * @return the buffer, of which the first {@link #getLength()} characters
+     * are used
+     */
+    public char[] getChars() {
+        return chars;
+    }
+
+    /**
+     * Get the number of characters kept in memory.
+     *
+     * @return the number of characters used in {@link #getChars()}
+     */
+    public int getLength() {
+        return len;
+    }
+
+    /**
+     * Get a new reader of the whole content. The temporary file is only
+     * opened when the characters in memory are read.
+     *
+     * @return a reader, which the caller should close
+     */
+    public Reader getReader() {
+        if (spill == null) {
+            return new CharArrayReader(chars, 0, len);
+        }
+        Reader reader = new ContentReader();
+        readers.add(reader);
+        return reader;
+    }
+
+    /**
+     * Forget the content, delete the temporary file, and shrink the memory
+     * buffer back to its initial size if a large file was read.
+     */
+    public void clear() {
+        for (Reader reader : readers) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                log.log(Level.FINE, "Failed to close a reader of the buffered content", e);
+            }
+        }
+        readers.clear();
+        if (spill != null && !spill.delete()) {
+            log.log(Level.WARNING, "Failed to delete the temporary file {0}", spill);
+        }
+        spill = null;
+        spilled = 0;
+        len = 0;
+        if (chars.length > 16 * INITIAL_SIZE) {
+            chars = new char[INITIAL_SIZE];
+        }
+    }
+
+    /**
+     * Reads the characters in memory, then the temporary file.
+     */
+    private final class ContentReader extends Reader {
+
+        private final char[] head = chars;
+        private final int headLength = len;
+        private final File rest = spill;
+        private int pos;
+        private Reader restReader;
+
+        @Override
+        public int read(char[] cbuf, int off, int n) throws IOException {
+            if (n == 0) {
+                return 0;
+            }
+            if (pos < headLength) {
+                int count = Math.min(n, headLength - pos);
+                System.arraycopy(head, pos, cbuf, off, count);
+                pos += count;
+                return count;
+            }
+            if (restReader == null) {
+                restReader = new InputStreamReader(new BufferedInputStream(new FileInputStream(rest)), SPILL_CHARSET);
+            }
+            return restReader.read(cbuf, off, n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            pos = headLength;
+            if (restReader != null) {
+                restReader.close();
+            }
+        }
+    }
+}
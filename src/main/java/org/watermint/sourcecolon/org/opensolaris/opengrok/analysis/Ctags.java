@@ -30,40 +30,110 @@ import org.watermint.sourcecolon.org.opensolaris.opengrok.util.IOUtils;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Provides Ctags by having a running instance of ctags
+ * Provides Ctags by having running instances of ctags.
+ * <p/>
+ * A single instance may be shared by several analyzer threads. The files are
+ * spread over a number of ctags processes, and each process may be given
+ * several files before its first result has been read (pipelining). A process
+ * which crashes, or doesn't answer within the timeout, is restarted the next
+ * time it is used.
  *
  * @author Chandan
  */
 public class Ctags {
 
-    private Process ctags;
-    private OutputStreamWriter ctagsIn;
-    private BufferedReader ctagsOut;
     private static final Logger log = Logger.getLogger(Ctags.class.getName());
     private static final String CTAGS_FILTER_TERMINATOR = "__ctags_done_with_file__";
     //default: setCtags(System.getProperty("org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.Ctags", "ctags"));
     private String binary;
     private ProcessBuilder processBuilder;
+    private int processes = 1;
+    private int pipelineDepth = 1;
+    private long timeout;
+    private boolean validate = true;
+    private CtagsProcess[] pool;
+    private Semaphore slots;
 
     public void setBinary(String binary) {
         this.binary = binary;
     }
 
+    /**
+     * Set the number of ctags processes. Has to be called before the first
+     * file is processed.
+     *
+     * @param processes the number of processes
+     */
+    public void setProcesses(int processes) {
+        this.processes = Math.max(1, processes);
+    }
+
+    /**
+     * Set how many files may be in flight in a single ctags process. Has to
+     * be called before the first file is processed.
+     *
+     * @param pipelineDepth the number of files per process
+     */
+    public void setPipelineDepth(int pipelineDepth) {
+        this.pipelineDepth = Math.max(1, pipelineDepth);
+    }
+
+    /**
+     * Set how long to wait for the definitions of a file. A process which
+     * doesn't answer in time is restarted, and the files queued in it get
+     * no definitions.
+     *
+     * @param timeout the timeout in milliseconds (0 for no limit)
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Run another command than the ctags binary, which isn't validated.
+     * Used by the tests.
+     *
+     * @param command the command and its arguments
+     */
+    synchronized void setCommand(List<String> command) {
+        processBuilder = new ProcessBuilder(command);
+        validate = false;
+    }
+
+    private synchronized boolean isValidated() {
+        return !validate || RuntimeEnvironment.getInstance().validateExuberantCtags();
+    }
+
     public void close() {
-        IOUtils.close(ctagsIn);
-        if (ctags != null) {
-            ctags.destroy();
+        CtagsProcess[] processes;
+        synchronized (this) {
+            processes = pool;
+            pool = null;
+        }
+        if (processes != null) {
+            for (CtagsProcess process : processes) {
+                process.close();
+            }
         }
     }
 
-    private void initialize() throws IOException {
+    private synchronized void initialize() {
+        if (pool != null) {
+            return;
+        }
         if (processBuilder == null) {
             List<String> command = new ArrayList<>();
             command.add(binary);
@@ -86,161 +156,358 @@ public class Ctags {
             processBuilder = new ProcessBuilder(command);
         }
 
-        ctags = processBuilder.start();
-        ctagsIn = new OutputStreamWriter(ctags.getOutputStream());
-        ctagsOut = new BufferedReader(new InputStreamReader(ctags.getInputStream()));
-
-        final BufferedReader error = new BufferedReader(new InputStreamReader(ctags.getErrorStream()));
+        pool = new CtagsProcess[processes];
+        for (int i = 0; i < processes; i++) {
+            pool[i] = new CtagsProcess(i + 1);
+        }
+        slots = new Semaphore(processes * pipelineDepth);
+    }
 
-        Thread errThread = new Thread(new Runnable() {
+    public Definitions doCtags(String file) throws IOException {
+        if (!isValidated()) {
+            return null;
+        }
+        if (file.length() == 0 || "\n".equals(file)) {
+            return null;
+        }
 
-            public void run() {
-                StringBuilder sb = new StringBuilder();
-                try {
-                    String s;
-                    while ((s = error.readLine()) != null) {
-                        sb.append(s);
-                        sb.append('\n');
-                    }
-                } catch (IOException exp) {
-                    log.log(Level.WARNING, "Got an exception reading ctags error stream: ", exp);
-                } finally {
-                    IOUtils.close(error);
-                }
-                if (sb.length() > 0) {
-                    log.warning("Error from ctags: " + sb.toString());
+        initialize();
+        Semaphore s = slots;
+        try {
+            s.acquire();
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for ctags");
+        }
+        try {
+            CtagsProcess process = leastBusy();
+            try {
+                return process.run(file);
+            } finally {
+                synchronized (this) {
+                    process.assigned--;
                 }
             }
-        });
-        errThread.setDaemon(true);
-        errThread.start();
+        } finally {
+            s.release();
+        }
     }
 
-    public Definitions doCtags(String file) throws IOException {
-        if (!RuntimeEnvironment.getInstance().validateExuberantCtags()) {
-            return null;
+    /**
+     * Pick the process with the fewest files in flight.
+     */
+    private synchronized CtagsProcess leastBusy() {
+        CtagsProcess best = pool[0];
+        for (CtagsProcess process : pool) {
+            if (process.assigned < best.assigned) {
+                best = process;
+            }
         }
-        boolean ctagsRunning = false;
-        if (ctags != null) {
+        best.assigned++;
+        return best;
+    }
+
+    /**
+     * A file waiting for its definitions.
+     */
+    private static final class Request {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile Definitions defs;
+
+        void finish(Definitions defs) {
+            this.defs = defs;
+            latch.countDown();
+        }
+
+        boolean await(long timeout) throws InterruptedIOException {
             try {
-                ctags.exitValue();
-                ctagsRunning = false;
-                // ctags is dead! we must restart!!!
-            } catch (IllegalThreadStateException exp) {
-                ctagsRunning = true;
-                // ctags is still running :)
+                if (timeout <= 0) {
+                    latch.await();
+                    return true;
+                }
+                return latch.await(timeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException exp) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for ctags");
             }
         }
+    }
 
-        if (!ctagsRunning) {
-            initialize();
+    /**
+     * One slot of the pool, which runs a ctags process and restarts it when
+     * needed.
+     */
+    private final class CtagsProcess {
+
+        private final int id;
+        // files handed to this process and not finished yet (guarded by Ctags.this)
+        private int assigned;
+        private Session session;
+        private boolean started;
+        private long startTime;
+        private long files;
+        private long time;
+        private int restarts;
+        private int timeouts;
+
+        CtagsProcess(int id) {
+            this.id = id;
         }
 
-        Definitions ret = null;
-        if (file.length() > 0 && !"\n".equals(file)) {
-            //log.fine("doing >" + file + "<");
-            ctagsIn.write(file);
-            ctagsIn.flush();
-            ret = new Definitions();
-            readTags(ret);
+        Definitions run(String file) throws IOException {
+            Request request = new Request();
+            Session s;
+            long start = System.currentTimeMillis();
+            synchronized (this) {
+                if (session == null || !session.isAlive()) {
+                    if (started) {
+                        restarts++;
+                        log.log(Level.INFO, "Restarting ctags process {0}", id);
+                    }
+                    session = new Session();
+                    if (!started) {
+                        started = true;
+                        startTime = start;
+                    }
+                }
+                s = session;
+                s.submit(request, file);
+            }
+
+            boolean done = request.await(timeout);
+            synchronized (this) {
+                files++;
+                time += System.currentTimeMillis() - start;
+                if (!done) {
+                    timeouts++;
+                }
+            }
+            if (!done) {
+                log.log(Level.WARNING, "ctags did not finish {0} within {1} ms, restarting it", new Object[]{file.trim(), timeout});
+                s.kill();
+                return null;
+            }
+            return request.defs;
         }
 
-        return ret;
+        synchronized void close() {
+            if (session != null) {
+                session.close();
+                session = null;
+            }
+            if (files > 0 && log.isLoggable(Level.INFO)) {
+                long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+                log.log(Level.INFO, "ctags process {0}: {1} files, {2} files/s, {3} ms per file, {4} restarts, {5} timeouts",
+                        new Object[]{id, files, files * 1000.0 / elapsed, time / files, restarts, timeouts});
+            }
+        }
     }
 
-    private void readTags(Definitions defs) {
-        try {
-            do {
-                String tagLine = ctagsOut.readLine();
-                //log.fine("Tagline:-->" + tagLine+"<----ONELINE");
-                if (tagLine == null) {
-                    log.warning("Unexpected end of file!");
+    /**
+     * A running ctags process. The definitions are read by a separate thread
+     * and handed to the waiting files in the order they were sent.
+     */
+    private final class Session implements Runnable {
+
+        private final Process ctags;
+        private final OutputStreamWriter ctagsIn;
+        private final BufferedReader ctagsOut;
+        private final Deque<Request> queue = new ArrayDeque<>();
+        private boolean alive = true;
+        private volatile boolean closing;
+
+        Session() throws IOException {
+            ctags = processBuilder.start();
+            ctagsIn = new OutputStreamWriter(ctags.getOutputStream());
+            ctagsOut = new BufferedReader(new InputStreamReader(ctags.getInputStream()));
+
+            final BufferedReader error = new BufferedReader(new InputStreamReader(ctags.getErrorStream()));
+
+            Thread errThread = new Thread(new Runnable() {
+
+                public void run() {
+                    StringBuilder sb = new StringBuilder();
                     try {
-                        int val = ctags.exitValue();
-                        log.warning("ctags exited with code: " + val);
-                    } catch (Exception e) {
-                        log.log(Level.WARNING, "Ctags problem: ", e);
+                        String s;
+                        while ((s = error.readLine()) != null) {
+                            sb.append(s);
+                            sb.append('\n');
+                        }
+                    } catch (IOException exp) {
+                        log.log(Level.WARNING, "Got an exception reading ctags error stream: ", exp);
+                    } finally {
+                        IOUtils.close(error);
+                    }
+                    if (sb.length() > 0) {
+                        log.warning("Error from ctags: " + sb.toString());
                     }
-                    log.fine("Ctags read");
-                    return;
                 }
+            });
+            errThread.setDaemon(true);
+            errThread.start();
 
-                if (CTAGS_FILTER_TERMINATOR.equals(tagLine)) {
-                    return;
-                }
+            Thread readThread = new Thread(this, "ctags-reader");
+            readThread.setDaemon(true);
+            readThread.start();
+        }
 
-                //fix for bug #16334
-                if (tagLine.endsWith(CTAGS_FILTER_TERMINATOR)) {
-                    log.log(Level.WARNING, "ctags encountered a problem while generating tags for the file. The index will be incomplete.");
-                    return;
+        boolean isAlive() {
+            synchronized (queue) {
+                return alive;
+            }
+        }
+
+        void submit(Request request, String file) throws IOException {
+            synchronized (queue) {
+                if (!alive) {
+                    throw new IOException("ctags is not running");
                 }
+                queue.add(request);
+            }
+            try {
+                ctagsIn.write(file);
+                ctagsIn.flush();
+            } catch (IOException e) {
+                kill();
+                throw e;
+            }
+        }
+
+        void kill() {
+            closing = true;
+            // the reader thread only notices later, and the next file
+            // should go to a new process
+            synchronized (queue) {
+                alive = false;
+            }
+            ctags.destroy();
+        }
+
+        void close() {
+            closing = true;
+            IOUtils.close(ctagsIn);
+            ctags.destroy();
+        }
 
-                int p = tagLine.indexOf('\t');
-                if (p <= 0) {
-                    //log.fine("SKIPPING LINE - NO TAB");
-                    continue;
+        @Override
+        public void run() {
+            Definitions defs = new Definitions();
+            try {
+                String tagLine;
+                while ((tagLine = ctagsOut.readLine()) != null) {
+                    //log.fine("Tagline:-->" + tagLine+"<----ONELINE");
+                    if (tagLine.endsWith(CTAGS_FILTER_TERMINATOR)) {
+                        //fix for bug #16334
+                        if (!CTAGS_FILTER_TERMINATOR.equals(tagLine)) {
+                            log.log(Level.WARNING, "ctags encountered a problem while generating tags for the file. The index will be incomplete.");
+                        }
+                        Request request;
+                        synchronized (queue) {
+                            request = queue.poll();
+                        }
+                        if (request != null) {
+                            request.finish(defs);
+                        }
+                        defs = new Definitions();
+                        continue;
+                    }
+                    try {
+                        readTag(tagLine, defs);
+                    } catch (RuntimeException e) {
+                        log.log(Level.WARNING, "CTags parsing problem: ", e);
+                    }
                 }
-                String def = tagLine.substring(0, p);
-                int mstart = tagLine.indexOf('\t', p + 1);
-                String lnum = "-1";
-                String signature = null;
-                String kind = null;
-                String inher = null;
-
-                int lp = tagLine.length();
-                while ((p = tagLine.lastIndexOf('\t', lp - 1)) > 0) {
-                    //log.fine(" p = " + p + " lp = " + lp);
-                    String fld = tagLine.substring(p + 1, lp);
-                    //log.fine("FIELD===" + fld);
-                    lp = p;
-                    if (fld.startsWith("line:")) {
-                        int sep = fld.indexOf(':');
-                        lnum = fld.substring(sep + 1);
-                    } else if (fld.startsWith("signature:")) {
-                        int sep = fld.indexOf(':');
-                        signature = fld.substring(sep + 1);
-                    } else if (fld.indexOf(':') < 0) {
-                        kind = fld;
-                        break;
-                    } else {
-                        inher = fld;
+                if (!closing) {
+                    log.warning("Unexpected end of file!");
+                    try {
+                        int val = ctags.waitFor();
+                        log.warning("ctags exited with code: " + val);
+                    } catch (InterruptedException e) {
+                        log.log(Level.WARNING, "Ctags problem: ", e);
                     }
                 }
-
-                final String match;
-                if ((p > 0) && (p - mstart > 6)) {
-                    match = tagLine.substring(mstart + 3, p - 4).
-                            replace("\\/", "/").replaceAll("[ \t]+", " ");
-                } else {
-                    continue;
+            } catch (IOException e) {
+                if (!closing) {
+                    log.log(Level.WARNING, "CTags parsing problem: ", e);
                 }
+            } finally {
+                IOUtils.close(ctagsOut);
+                List<Request> failed;
+                synchronized (queue) {
+                    alive = false;
+                    failed = new ArrayList<>(queue);
+                    queue.clear();
+                }
+                for (Request request : failed) {
+                    request.finish(null);
+                }
+            }
+        }
+    }
+
+    private void readTag(String tagLine, Definitions defs) {
+        int p = tagLine.indexOf('\t');
+        if (p <= 0) {
+            //log.fine("SKIPPING LINE - NO TAB");
+            return;
+        }
+        String def = tagLine.substring(0, p);
+        int mstart = tagLine.indexOf('\t', p + 1);
+        String lnum = "-1";
+        String signature = null;
+        String kind = null;
+        String inher = null;
 
-                final String type =
-                        inher == null ? kind : kind + " in " + inher;
-                defs.addTag(Integer.parseInt(lnum), def.trim(), type.trim(), match.trim());
-                if (signature != null) {
-                    //TODO if some languages use different character for separating arguments, below needs to be adjusted
-                    String[] args = signature.split(",");
-                    for (String arg : args) {
-                        int space = arg.lastIndexOf(' ');//TODO this is not the best way, but works to find the last string(name) in the argument, hence skipping type
-                        if (space > 0 && space < arg.length()) {
-                            String afters = arg.substring(space + 1);
-                            //FIXME this will not work for typeless languages such as python or assignments inside signature ... but since ctags doesn't provide signatures for python yet and assigning stuff in signature is not the case for c or java, we don't care ...
-                            String[] names = afters.split("[\\W]"); //this should just parse out variables, we assume first non empty text is the argument name
-                            for (String name : names) {
-                                if (name.length() > 0) {
-                                    defs.addTag(Integer.parseInt(lnum), name.trim(),
-                                            "argument", def.trim() + signature.trim());
-                                    break;
-                                }
-                            }
+        int lp = tagLine.length();
+        while ((p = tagLine.lastIndexOf('\t', lp - 1)) > 0) {
+            //log.fine(" p = " + p + " lp = " + lp);
+            String fld = tagLine.substring(p + 1, lp);
+            //log.fine("FIELD===" + fld);
+            lp = p;
+            if (fld.startsWith("line:")) {
+                int sep = fld.indexOf(':');
+                lnum = fld.substring(sep + 1);
+            } else if (fld.startsWith("signature:")) {
+                int sep = fld.indexOf(':');
+                signature = fld.substring(sep + 1);
+            } else if (fld.indexOf(':') < 0) {
+                kind = fld;
+                break;
+            } else {
+                inher = fld;
+            }
+        }
+
+        final String match;
+        if ((p > 0) && (p - mstart > 6)) {
+            match = tagLine.substring(mstart + 3, p - 4).
+                    replace("\\/", "/").replaceAll("[ \t]+", " ");
+        } else {
+            return;
+        }
+
+        final String type =
+                inher == null ? kind : kind + " in " + inher;
+        defs.addTag(Integer.parseInt(lnum), def.trim(), type.trim(), match.trim());
+        if (signature != null) {
+            //TODO if some languages use different character for separating arguments, below needs to be adjusted
+            String[] args = signature.split(",");
+            for (String arg : args) {
+                int space = arg.lastIndexOf(' ');//TODO this is not the best way, but works to find the last string(name) in the argument, hence skipping type
+                if (space > 0 && space < arg.length()) {
+                    String afters = arg.substring(space + 1);
+                    //FIXME this will not work for typeless languages such as python or assignments inside signature ... but since ctags doesn't provide signatures for python yet and assigning stuff in signature is not the case for c or java, we don't care ...
+                    String[] names = afters.split("[\\W]"); //this should just parse out variables, we assume first non empty text is the argument name
+                    for (String name : names) {
+                        if (name.length() > 0) {
+                            defs.addTag(Integer.parseInt(lnum), name.trim(),
+                                    "argument", def.trim() + signature.trim());
+                            break;
                         }
                     }
                 }
-            } while (true);
-        } catch (Exception e) {
-            log.log(Level.WARNING, "CTags parsing problem: ", e);
+            }
         }
-        log.severe("CTag reader cycle was interrupted!");
     }
 }
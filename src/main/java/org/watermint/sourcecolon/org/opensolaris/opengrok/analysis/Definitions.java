@@ -25,8 +25,17 @@
 package org.watermint.sourcecolon.org.opensolaris.opengrok.analysis;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
+/**
+ * The definitions (tags) of a file.
+ * <p/>
+ * The definitions are stored in the index in a compact binary format (see
+ * {@link #serialize()}). Definitions read from the index are decoded when
+ * they are used first, and the lookup tables by symbol and line are only
+ * built if needed.
+ */
 public class Definitions implements Serializable {
     private static final long serialVersionUID = 1191703801007779489L;
 
@@ -40,31 +49,68 @@ public class Definitions implements Serializable {
         }
     }
 
-    // line -> tag_map
-    private final Map<Integer, LineTagMap> line_maps;
+    /**
+     * First bytes of the compact format. Java serialization streams start
+     * with 0xACED instead.
+     */
+    private static final byte[] MAGIC = {'D', 'E', 'F'};
+    private static final int VERSION = 1;
+
+    // line -> tag_map, null until needed
+    private Map<Integer, LineTagMap> line_maps;
 
     /**
-     * Map from symbol to the line numbers on which the symbol is defined.
+     * Map from symbol to the line numbers on which the symbol is defined,
+     * null until needed.
      */
-    private final Map<String, Set<Integer>> symbols;
+    private Map<String, Set<Integer>> symbols;
     /**
      * List of all the tags.
      */
-    private final List<Tag> tags;
+    private List<Tag> tags;
+    /**
+     * The compact representation of the tags, if not decoded yet.
+     */
+    private transient byte[] encoded;
 
     public Definitions() {
-        symbols = new HashMap<>();
-        line_maps = new HashMap<>();
         tags = new ArrayList<>();
     }
 
+    private Definitions(byte[] encoded) {
+        this.encoded = encoded;
+    }
+
+    private List<Tag> tags() {
+        if (encoded != null) {
+            try {
+                tags = decode(encoded);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to decode definitions", e);
+            }
+            encoded = null;
+        }
+        return tags;
+    }
+
+    private Map<String, Set<Integer>> symbols() {
+        if (symbols == null) {
+            symbols = new HashMap<>();
+            line_maps = new HashMap<>();
+            for (Tag tag : tags()) {
+                index(tag);
+            }
+        }
+        return symbols;
+    }
+
     /**
      * Get all symbols used in definitions.
      *
      * @return a set containing all the symbols
      */
     public Set<String> getSymbols() {
-        return symbols.keySet();
+        return symbols().keySet();
     }
 
     /**
@@ -74,7 +120,7 @@ public class Definitions implements Serializable {
      * @return {@code true} iff there is a tag for {@code symbol}
      */
     public boolean hasSymbol(String symbol) {
-        return symbols.containsKey(symbol);
+        return symbols().containsKey(symbol);
     }
 
     /**
@@ -86,7 +132,7 @@ public class Definitions implements Serializable {
      * @return {@code true} iff {@code symbol} is defined on the specified line
      */
     public boolean hasDefinitionAt(String symbol, int lineNumber, String[] strs) {
-        Set<Integer> lines = symbols.get(symbol);
+        Set<Integer> lines = symbols().get(symbol);
         if (strs.length > 0) {
             strs[0] = "none";
         }
@@ -116,7 +162,7 @@ public class Definitions implements Serializable {
      * @return the number of times the specified symbol is defined
      */
     public int occurrences(String symbol) {
-        Set<Integer> lines = symbols.get(symbol);
+        Set<Integer> lines = symbols().get(symbol);
         return lines == null ? 0 : lines.size();
     }
 
@@ -126,7 +172,7 @@ public class Definitions implements Serializable {
      * @return number of distinct symbols
      */
     public int numberOfSymbols() {
-        return symbols.size();
+        return symbols().size();
     }
 
     /**
@@ -135,7 +181,7 @@ public class Definitions implements Serializable {
      * @return all tags
      */
     public List<Tag> getTags() {
-        return tags;
+        return tags();
     }
 
     /**
@@ -178,44 +224,84 @@ public class Definitions implements Serializable {
         final String internedType = type.intern();
         final String internedText = text.intern();
         Tag new_tag = new Tag(line, internedSymbol, internedType, internedText);
-        tags.add(new_tag);
-        Set<Integer> lines = symbols.get(internedSymbol);
+        symbols();
+        tags().add(new_tag);
+        index(new_tag);
+    }
+
+    private void index(Tag tag) {
+        Set<Integer> lines = symbols.get(tag.symbol);
         if (lines == null) {
             lines = new HashSet<>();
-            symbols.put(internedSymbol, lines);
+            symbols.put(tag.symbol, lines);
         }
-        lines.add(line);
+        lines.add(tag.line);
 
         // Get per line map
-        LineTagMap line_map = line_maps.get(line);
+        LineTagMap line_map = line_maps.get(tag.line);
         if (line_map == null) {
             line_map = new LineTagMap();
-            line_maps.put(line, line_map);
+            line_maps.put(tag.line, line_map);
         }
 
         // Insert sym->tag map for this line
-        Set<Tag> tags = line_map.sym_tags.get(internedSymbol);
+        Set<Tag> tags = line_map.sym_tags.get(tag.symbol);
         if (tags == null) {
             tags = new HashSet<>();
-            line_map.sym_tags.put(internedSymbol, tags);
+            line_map.sym_tags.put(tag.symbol, tags);
         }
-        tags.add(new_tag);
+        tags.add(tag);
     }
 
     /**
-     * Create a binary representation of this object.
+     * Create a binary representation of this object. The representation
+     * consists of
+     * <ul>
+     * <li>the magic bytes {@code DEF} and a version byte</li>
+     * <li>the dictionary of the types of the tags</li>
+     * <li>the table of the symbols and texts of the tags</li>
+     * <li>the tags: line number, and the indexes of their type in the
+     * dictionary and of their symbol and text in the table</li>
+     * </ul>
+     * Strings are written as UTF-8 and prefixed with their length, numbers
+     * are written as variable length integers.
      *
      * @return a byte array representing this object
      * @throws IOException if an error happens when writing to the array
      */
     public byte[] serialize() throws IOException {
-        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-        new ObjectOutputStream(bytes).writeObject(this);
+        if (encoded != null) {
+            return encoded;
+        }
+        List<Tag> all = tags();
+        Map<String, Integer> types = new LinkedHashMap<>();
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (Tag tag : all) {
+            addString(types, tag.type);
+            addString(strings, tag.symbol);
+            addString(strings, tag.text);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 32 * all.size());
+        bytes.write(MAGIC);
+        bytes.write(VERSION);
+        writeStrings(bytes, types.keySet());
+        writeStrings(bytes, strings.keySet());
+        writeVInt(bytes, all.size());
+        for (Tag tag : all) {
+            writeVInt(bytes, tag.line);
+            writeVInt(bytes, types.get(tag.type));
+            writeVInt(bytes, strings.get(tag.symbol));
+            writeVInt(bytes, strings.get(tag.text));
+        }
         return bytes.toByteArray();
     }
 
     /**
      * Deserialize a binary representation of a {@code Definitions} object.
+     * Both the compact format written by {@link #serialize()} and the Java
+     * serialization used by older versions are read. The tags of the
+     * compact format are decoded when they are used first.
      *
      * @param bytes a byte array containing the {@code Definitions} object
      * @return a {@code Definitions} object
@@ -227,8 +313,93 @@ public class Definitions implements Serializable {
      */
     public static Definitions deserialize(byte[] bytes)
             throws IOException, ClassNotFoundException {
+        if (bytes.length > MAGIC.length && bytes[0] == MAGIC[0] && bytes[1] == MAGIC[1] && bytes[2] == MAGIC[2]) {
+            if (bytes[MAGIC.length] != VERSION) {
+                throw new IOException("Unsupported definitions format version " + bytes[MAGIC.length]);
+            }
+            return new Definitions(bytes);
+        }
         ObjectInputStream in =
                 new ObjectInputStream(new ByteArrayInputStream(bytes));
         return (Definitions) in.readObject();
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // Java serialization needs all fields
+        symbols();
+        out.defaultWriteObject();
+    }
+
+    private static List<Tag> decode(byte[] bytes) throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes, MAGIC.length + 1, bytes.length);
+        String[] types = readStrings(in);
+        String[] strings = readStrings(in);
+        int count = readVInt(in);
+        List<Tag> list = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                int line = readVInt(in);
+                String type = types[readVInt(in)];
+                String symbol = strings[readVInt(in)];
+                list.add(new Tag(line, symbol, type, strings[readVInt(in)]));
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupt definitions", e);
+        }
+        return list;
+    }
+
+    private static void addString(Map<String, Integer> table, String s) {
+        if (!table.containsKey(s)) {
+            table.put(s, table.size());
+        }
+    }
+
+    private static void writeStrings(ByteArrayOutputStream out, Collection<String> strings) {
+        writeVInt(out, strings.size());
+        for (String s : strings) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            writeVInt(out, b.length);
+            out.write(b, 0, b.length);
+        }
+    }
+
+    private static String[] readStrings(ByteArrayInputStream in) throws IOException {
+        String[] strings = new String[readVInt(in)];
+        byte[] buf = new byte[64];
+        for (int i = 0; i < strings.length; i++) {
+            int len = readVInt(in);
+            if (len > buf.length) {
+                buf = new byte[Math.max(len, 2 * buf.length)];
+            }
+            if (in.read(buf, 0, len) < len) {
+                throw new EOFException("Truncated definitions");
+            }
+            strings[i] = new String(buf, 0, len, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static void writeVInt(ByteArrayOutputStream out, int i) {
+        while ((i & ~0x7F) != 0) {
+            out.write((i & 0x7F) | 0x80);
+            i >>>= 7;
+        }
+        out.write(i);
+    }
+
+    private static int readVInt(ByteArrayInputStream in) throws IOException {
+        int i = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated definitions");
+            }
+            i |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return i;
+            }
+        }
+        throw new IOException("Corrupt definitions");
+    }
 }
@@ -123,10 +123,33 @@ public class FileAnalyzer extends Analyzer {
         this.ctags = ctags;
     }
 
+    /**
+     * Serialized definitions of a file with the same content, which were
+     * computed earlier. If set, they are used instead of running ctags.
+     */
+    protected byte[] knownTags;
+
+    public void setKnownTags(byte[] knownTags) {
+        this.knownTags = knownTags;
+    }
+
     public void setProject(Project project) {
         this.project = project;
     }
 
+    /**
+     * Forget the state of the last file analyzed. Analyzers are cached per
+     * thread by their factory and used for many files, so they must not pass
+     * the settings of one file to the next one, nor keep its content
+     * referenced after it is done. Called by the factory each time the
+     * analyzer is handed out, and by the indexer once it is done with a file.
+     */
+    public void reset() {
+        ctags = null;
+        knownTags = null;
+        project = null;
+    }
+
     /**
      * Get the factory which created this analyzer.
      *
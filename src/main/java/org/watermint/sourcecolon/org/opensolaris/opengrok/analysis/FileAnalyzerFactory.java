@@ -186,8 +186,9 @@ public class FileAnalyzerFactory {
     /**
      * Get an analyzer. If the same thread calls this method multiple times on
      * the same factory object, the exact same analyzer object will be returned
-     * each time. Subclasses should not override this method, but instead
-     * override the {@code newAnalyzer()} method.
+     * each time, with the state of the file it analyzed last reset.
+     * Subclasses should not override this method, but instead override the
+     * {@code newAnalyzer()} method.
      *
      * @return a {@code FileAnalyzer} instance
      * @see #newAnalyzer()
@@ -197,6 +198,8 @@ public class FileAnalyzerFactory {
         if (fa == null) {
             fa = newAnalyzer();
             cachedAnalyzer.set(fa);
+        } else {
+            fa.reset();
         }
         return fa;
     }
@@ -24,14 +24,18 @@
 
 package org.watermint.sourcecolon.org.opensolaris.opengrok.analysis;
 
+import org.apache.lucene.analysis.CharArraySet;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.Version;
 
 import java.io.CharArrayReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Locale;
+import java.util.Set;
 
 /**
  * this class was created because of lucene 2.4.1 update which introduced char[] in Tokens instead of String
@@ -68,6 +72,15 @@ public abstract class JFlexTokenizer extends Tokenizer {
         yyreset(new CharArrayReader(contents, 0, length));
     }
 
+    /**
+     * Reinitialize the tokenizer with new contents.
+     *
+     * @param contents a reader of the text to tokenize
+     */
+    public final void reInit(Reader contents) {
+        yyreset(contents);
+    }
+
     @Override
     public final void close() throws IOException {
         yyclose();
@@ -95,4 +108,69 @@ public abstract class JFlexTokenizer extends Tokenizer {
         this.termAtt.append(str);
         this.offsetAtt.setOffset(start, end);
     }
+
+    /**
+     * Set the attributes of a token straight from the characters in the
+     * scanner buffer, without creating a string for it. Subclasses pass
+     * {@code zzBuffer} and {@code zzStartRead} of the scanner.
+     *
+     * @param buf    the buffer holding the token
+     * @param offset the index of the first character of the token
+     * @param length the number of characters of the token
+     * @param start  the start offset of the token in the file
+     * @param end    the end offset of the token in the file
+     */
+    protected void setAttribs(char[] buf, int offset, int length, int start, int end) {
+        this.posIncrAtt.setPositionIncrement(1);
+        this.termAtt.copyBuffer(buf, offset, length);
+        this.offsetAtt.setOffset(start, end);
+    }
+
+    /**
+     * Like {@link #setAttribs(char[], int, int, int, int)}, with the token
+     * in lower case for the default locale. ASCII tokens are converted in
+     * the term buffer, others the way {@link String#toLowerCase()} does.
+     */
+    protected void setAttribsLowerCase(char[] buf, int offset, int length, int start, int end) {
+        setAttribs(buf, offset, length, start, end);
+        char[] term = this.termAtt.buffer();
+        boolean ascii = !turkic(Locale.getDefault());
+        for (int i = 0; ascii && i < length; i++) {
+            ascii = term[i] < 0x80;
+        }
+        if (ascii) {
+            for (int i = 0; i < length; i++) {
+                char c = term[i];
+                if (c >= 'A' && c <= 'Z') {
+                    term[i] = (char) (c + ('a' - 'A'));
+                }
+            }
+        } else {
+            this.termAtt.setEmpty();
+            this.termAtt.append(new String(buf, offset, length).toLowerCase(Locale.getDefault()));
+        }
+    }
+
+    /**
+     * Check if a locale lowercases the ASCII letter I to something else
+     * than i.
+     */
+    private static boolean turkic(Locale locale) {
+        String language = locale.getLanguage();
+        return "tr".equals(language) || "az".equals(language);
+    }
+
+    /**
+     * Create a set of keywords, in which a token can be looked up with
+     * {@link CharArraySet#contains(char[], int, int)} straight in the
+     * scanner buffer.
+     *
+     * @param keywords   the keywords of the language
+     * @param ignoreCase whether the set should ignore the case of tokens,
+     *                   in which case the keywords should be in lower case
+     * @return an unmodifiable set of the keywords
+     */
+    protected static CharArraySet keywords(Set<String> keywords, boolean ignoreCase) {
+        return CharArraySet.unmodifiableSet(new CharArraySet(Version.LUCENE_36, keywords, ignoreCase));
+    }
 }
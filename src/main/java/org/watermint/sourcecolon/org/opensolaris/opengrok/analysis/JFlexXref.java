@@ -136,6 +136,15 @@ public abstract class JFlexXref {
         yyreset(new CharArrayReader(contents, 0, length));
     }
 
+    /**
+     * Reinitialize the xref with new contents.
+     *
+     * @param contents a reader of the text to analyze
+     */
+    public void reInit(Reader contents) {
+        yyreset(contents);
+    }
+
     public void setDefs(Definitions defs) {
         this.defs = defs;
     }
@@ -0,0 +1,326 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+package org.watermint.sourcecolon.org.opensolaris.opengrok.analysis;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Index of the lines of a large file, stored with the file in the
+ * {@code lines} field. The file is split into blocks of whole lines of about
+ * {@link #BLOCK_SIZE} characters, and the index records where each block
+ * starts: its first line, the offset of that line in the file (in characters,
+ * as read with the charset detected) and the position of its first token in
+ * the {@code full} field. With the positions of the matching terms of a
+ * document, the context of a hit can be created from the few blocks which
+ * contain the matches, instead of tokenizing the whole file.
+ */
+public final class LineIndex {
+
+    /**
+     * Files with fewer characters than this are not indexed, since they are
+     * read at once anyway.
+     */
+    public static final int MIN_LENGTH = 1024 * 1024;
+    /**
+     * The approximate number of characters of a block.
+     */
+    public static final int BLOCK_SIZE = 16 * 1024;
+    private static final int VERSION = 1;
+
+    private final int[] lines;
+    private final int[] offsets;
+    private final int[] positions;
+
+    private LineIndex(int[] lines, int[] offsets, int[] positions) {
+        this.lines = lines;
+        this.offsets = offsets;
+        this.positions = positions;
+    }
+
+    /**
+     * A reader which records where the blocks of the file start, while the
+     * file is read for analysis. It has to read the file before any
+     * character is changed (e.g. tabs expanded), so that the offsets match
+     * the file.
+     */
+    public static final class BlockRecorder extends FilterReader {
+
+        private int[] lines = new int[16];
+        private int[] offsets = new int[16];
+        private int[] newlines = new int[16];
+        private int size = 1;
+        private int offset;
+        private int line = 1;
+        private int newline;
+        private boolean cr;
+
+        /**
+         * Create a new recorder.
+         *
+         * @param in the file to read
+         */
+        public BlockRecorder(Reader in) {
+            super(in);
+            lines[0] = 1;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) {
+                record((char) c);
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int n = super.read(cbuf, off, len);
+            for (int i = 0; i < n; i++) {
+                record(cbuf[off + i]);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            throw new IOException("skip is not supported");
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void record(char c) {
+            offset++;
+            switch (c) {
+                case '\n':
+                    newline++;
+                    // \r\n is a single line break
+                    if (!cr) {
+                        line++;
+                    }
+                    if (offset - offsets[size - 1] >= BLOCK_SIZE) {
+                        if (size == lines.length) {
+                            lines = Arrays.copyOf(lines, size * 2);
+                            offsets = Arrays.copyOf(offsets, size * 2);
+                            newlines = Arrays.copyOf(newlines, size * 2);
+                        }
+                        lines[size] = line;
+                        offsets[size] = offset;
+                        newlines[size] = newline;
+                        size++;
+                    }
+                    break;
+                // the other line breaks known to the lexers
+                case '\r':
+                case '\u000B':
+                case '\u000C':
+                case '\u0085':
+                case '\u2028':
+                case '\u2029':
+                    line++;
+                    break;
+            }
+            cr = c == '\r';
+        }
+
+        /**
+         * Create the index of the file read.
+         *
+         * @param content a reader of the content of the file as analyzed
+         *                (the lines have to be the same as in the file)
+         * @param tokens  the tokens of the {@code full} field of the content,
+         *                each of them at the position following the previous
+         *                one
+         * @return the index of the lines
+         * @throws IOException if the content or the tokens cannot be read
+         */
+        public LineIndex create(Reader content, TokenStream tokens) throws IOException {
+            OffsetAttribute offsetAtt = tokens.addAttribute(OffsetAttribute.class);
+            int[] positions = new int[size];
+            char[] buf = new char[8192];
+            int buffered = 0;
+            int next = 0;
+            int block = 1;
+            int scanned = 0;
+            int nl = 0;
+            int position = 0;
+            while (block < size && tokens.incrementToken()) {
+                int start = offsetAtt.startOffset();
+                while (scanned < start) {
+                    if (next == buffered) {
+                        buffered = content.read(buf, 0, buf.length);
+                        next = 0;
+                        if (buffered <= 0) {
+                            throw new EOFException("Token after the end of the content");
+                        }
+                    }
+                    if (buf[next++] == '\n') {
+                        nl++;
+                    }
+                    scanned++;
+                }
+                while (block < size && nl >= newlines[block]) {
+                    positions[block++] = position;
+                }
+                position++;
+            }
+            while (block < size) {
+                positions[block++] = position;
+            }
+            return new LineIndex(Arrays.copyOf(lines, size), Arrays.copyOf(offsets, size), positions);
+        }
+    }
+
+    /**
+     * Get the number of blocks.
+     *
+     * @return the number of blocks, at least 1
+     */
+    public int size() {
+        return lines.length;
+    }
+
+    /**
+     * Get the first line of a block.
+     *
+     * @param block the index of the block
+     * @return the line number
+     */
+    public int getLine(int block) {
+        return lines[block];
+    }
+
+    /**
+     * Get the offset of the first line of a block.
+     *
+     * @param block the index of the block
+     * @return the offset in characters
+     */
+    public int getOffset(int block) {
+        return offsets[block];
+    }
+
+    /**
+     * Get the offset of the end of a block.
+     *
+     * @param block the index of the block
+     * @return the offset in characters, -1 for the end of the file
+     */
+    public int getEnd(int block) {
+        return block + 1 < offsets.length ? offsets[block + 1] : -1;
+    }
+
+    /**
+     * Find the block which contains a token.
+     *
+     * @param position the position of the token in the {@code full} field
+     * @return the index of the block
+     */
+    public int findBlock(int position) {
+        int low = 0;
+        int high = positions.length - 1;
+        // the last block starting at or before the position: blocks without
+        // tokens start at the same position as the next one
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (positions[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the index in the form stored in the index database.
+     *
+     * @return the index as bytes
+     */
+    public byte[] serialize() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 * lines.length);
+        bytes.write(VERSION);
+        writeVInt(bytes, lines.length);
+        for (int i = 1; i < lines.length; i++) {
+            writeVInt(bytes, lines[i] - lines[i - 1]);
+            writeVInt(bytes, offsets[i] - offsets[i - 1]);
+            writeVInt(bytes, positions[i] - positions[i - 1]);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read an index stored in the index database.
+     *
+     * @param bytes the index as returned by {@link #serialize()}
+     * @return the index
+     * @throws IOException if the bytes are not a line index
+     */
+    public static LineIndex deserialize(byte[] bytes) throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        if (in.read() != VERSION) {
+            throw new IOException("Unsupported line index format version " + bytes[0]);
+        }
+        int size = readVInt(in);
+        int[] lines = new int[size];
+        int[] offsets = new int[size];
+        int[] positions = new int[size];
+        lines[0] = 1;
+        for (int i = 1; i < size; i++) {
+            lines[i] = lines[i - 1] + readVInt(in);
+            offsets[i] = offsets[i - 1] + readVInt(in);
+            positions[i] = positions[i - 1] + readVInt(in);
+        }
+        return new LineIndex(lines, offsets, positions);
+    }
+
+    private static void writeVInt(ByteArrayOutputStream out, int i) {
+        while ((i & ~0x7F) != 0) {
+            out.write((i & 0x7F) | 0x80);
+            i >>>= 7;
+        }
+        out.write(i);
+    }
+
+    private static int readVInt(ByteArrayInputStream in) throws IOException {
+        int i = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated line index");
+            }
+            i |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return i;
+            }
+        }
+        throw new IOException("Corrupt line index");
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+package org.watermint.sourcecolon.org.opensolaris.opengrok.analysis;
+
+import java.util.Arrays;
+
+/**
+ * The magic numbers of all analyzers, in a trie of bytes. Finding the
+ * analyzer for the first bytes of a file takes one step per byte, however
+ * many magic numbers are registered.
+ * <p>
+ * The nodes never change. Adding a magic number copies the nodes on its
+ * path and then replaces the root, so lookups in other threads see either
+ * the old or the new trie, without locking.
+ */
+final class MagicTrie {
+
+    private static final class Node {
+        private static final Node EMPTY = new Node(new byte[0], new Node[0], null);
+
+        private final byte[] labels;
+        private final Node[] children;
+        private final FileAnalyzerFactory factory;
+
+        Node(byte[] labels, Node[] children, FileAnalyzerFactory factory) {
+            this.labels = labels;
+            this.children = children;
+            this.factory = factory;
+        }
+
+        Node child(byte b) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == b) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Copy this node and the nodes below it on the path of a magic
+         * number, with the factory set at its end.
+         *
+         * @return the copy, or {@code null} if the magic number was known
+         */
+        Node with(byte[] magic, int offset, FileAnalyzerFactory factory) {
+            if (offset == magic.length) {
+                return this.factory == null ? new Node(labels, children, factory) : null;
+            }
+            byte b = magic[offset];
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == b) {
+                    Node child = children[i].with(magic, offset + 1, factory);
+                    if (child == null) {
+                        return null;
+                    }
+                    Node[] copy = children.clone();
+                    copy[i] = child;
+                    return new Node(labels, copy, this.factory);
+                }
+            }
+            Node child = EMPTY.with(magic, offset + 1, factory);
+            byte[] newLabels = Arrays.copyOf(labels, labels.length + 1);
+            Node[] newChildren = Arrays.copyOf(children, children.length + 1);
+            newLabels[labels.length] = b;
+            newChildren[children.length] = child;
+            return new Node(newLabels, newChildren, this.factory);
+        }
+    }
+
+    private volatile Node root = Node.EMPTY;
+    private volatile int maxLength;
+
+    /**
+     * Add a magic number. A magic number which is already known keeps its
+     * analyzer.
+     *
+     * @param magic   the first bytes of the files
+     * @param factory the factory of the analyzer for the files
+     * @return false if the magic number was known already
+     */
+    synchronized boolean add(byte[] magic, FileAnalyzerFactory factory) {
+        if (magic.length == 0) {
+            return true;
+        }
+        Node added = root.with(magic, 0, factory);
+        if (added == null) {
+            return false;
+        }
+        // a lookup which sees the new length before the new root only
+        // reads a few bytes more than it needs
+        maxLength = Math.max(maxLength, magic.length);
+        root = added;
+        return true;
+    }
+
+    /**
+     * Find the analyzer of the longest magic number a file starts with.
+     *
+     * @param bytes the first bytes of the file
+     * @param len   the number of bytes read
+     * @return the analyzer factory, or {@code null} if no magic number matches
+     */
+    FileAnalyzerFactory find(byte[] bytes, int len) {
+        FileAnalyzerFactory found = null;
+        Node node = root;
+        for (int i = 0; i < len && (node = node.child(bytes[i])) != null; i++) {
+            if (node.factory != null) {
+                found = node.factory;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Get the length of the longest magic number, which is the number of
+     * bytes of a file to read to find its analyzer.
+     *
+     * @return the number of bytes
+     */
+    int getMaxLength() {
+        return maxLength;
+    }
+}
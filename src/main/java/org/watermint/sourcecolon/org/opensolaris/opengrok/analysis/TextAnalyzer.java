@@ -20,9 +20,8 @@
 
 package org.watermint.sourcecolon.org.opensolaris.opengrok.analysis;
 
-import com.ibm.icu.text.CharsetDetector;
-import com.ibm.icu.text.CharsetMatch;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.util.IOUtils;
 
 import java.io.IOException;
@@ -35,8 +34,15 @@ public abstract class TextAnalyzer extends FileAnalyzer {
         super(factory);
     }
 
+    /**
+     * Detect the charset of the file and analyze its text. The charset is
+     * stored with the document, so that the file can be read again for the
+     * context of a hit without detecting it.
+     */
     public final void analyze(Document doc, InputStream in) throws IOException {
-        analyze(doc, IOUtils.readerWithCharsetDetect(in));
+        String charset = IOUtils.detectCharset(in);
+        doc.add(new Field("charset", charset, Field.Store.YES, Field.Index.NO));
+        analyze(doc, new InputStreamReader(in, charset));
     }
 
     protected abstract void analyze(Document doc, Reader reader) throws IOException;
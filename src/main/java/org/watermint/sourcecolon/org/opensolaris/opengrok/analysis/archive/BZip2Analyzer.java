@@ -91,6 +91,15 @@ public final class BZip2Analyzer extends FileAnalyzer {
         }
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        if (fa != null) {
+            fa.reset();
+            fa = null;
+        }
+    }
+
     @Override
     public TokenStream tokenStream(String fieldName, Reader reader) {
         if (fa != null) {
@@ -88,6 +88,15 @@ public final class GZIPAnalyzer extends FileAnalyzer {
         }
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        if (fa != null) {
+            fa.reset();
+            fa = null;
+        }
+    }
+
     @Override
     public TokenStream tokenStream(String fieldName, Reader reader) {
         if (fa != null) {
@@ -65,7 +65,7 @@ public final class CAnalyzer extends PlainAnalyzerBase {
 
     public TokenStream tokenStream(String fieldName, Reader reader) {
         if ("refs".equals(fieldName)) {
-            cref.reInit(super.content, super.len);
+            cref.reInit(content.getReader());
             return cref;
         }
         return super.tokenStream(fieldName, reader);
@@ -77,7 +77,7 @@ public final class CAnalyzer extends PlainAnalyzerBase {
      * @param out Writer to write HTML cross-reference
      */
     public void writeXref(Writer out) throws IOException {
-        xref.reInit(content, len);
+        xref.reInit(content.getReader());
         xref.project = project;
         xref.setDefs(defs);
         xref.write(out);
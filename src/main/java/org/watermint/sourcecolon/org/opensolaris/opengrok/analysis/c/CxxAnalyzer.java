@@ -61,7 +61,7 @@ public final class CxxAnalyzer extends PlainAnalyzerBase {
 
     public TokenStream tokenStream(String fieldName, Reader reader) {
         if ("refs".equals(fieldName)) {
-            cref.reInit(super.content, super.len);
+            cref.reInit(content.getReader());
             return cref;
         }
         return super.tokenStream(fieldName, reader);
@@ -73,7 +73,7 @@ public final class CxxAnalyzer extends PlainAnalyzerBase {
      * @param out Writer to write HTML cross-reference
      */
     public void writeXref(Writer out) throws IOException {
-        xref.reInit(content, len);
+        xref.reInit(content.getReader());
         xref.project = project;
         xref.setDefs(defs);
         xref.write(out);
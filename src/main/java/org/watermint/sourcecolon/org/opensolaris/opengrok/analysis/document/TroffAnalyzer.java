@@ -41,6 +41,7 @@ import java.util.Arrays;
  * @author Chandan
  */
 public final class TroffAnalyzer extends FileAnalyzer {
+    private static final int CONTENT_SIZE = 12 * 1024;
     private char[] content;
     private int len;
 
@@ -55,7 +56,7 @@ public final class TroffAnalyzer extends FileAnalyzer {
         Reader dummy = new StringReader("");
         troffull = new TroffFullTokenizer(dummy);
         xref = new TroffXref(dummy);
-        content = new char[12 * 1024];
+        content = new char[CONTENT_SIZE];
     }
 
     @Override
@@ -77,6 +78,15 @@ public final class TroffAnalyzer extends FileAnalyzer {
         doc.add(new Field("full", new StringReader("")));
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        len = 0;
+        if (content.length > 64 * CONTENT_SIZE) {
+            content = new char[CONTENT_SIZE];
+        }
+    }
+
     @Override
     public TokenStream tokenStream(String fieldName, Reader reader) {
         if ("full".equals(fieldName)) {
@@ -59,7 +59,7 @@ public final class FortranAnalyzer extends PlainAnalyzerBase {
     @Override
     public TokenStream tokenStream(String fieldName, Reader reader) {
         if ("refs".equals(fieldName)) {
-            fref.reInit(super.content, super.len);
+            fref.reInit(content.getReader());
             return fref;
         }
         return super.tokenStream(fieldName, reader);
@@ -72,7 +72,7 @@ public final class FortranAnalyzer extends PlainAnalyzerBase {
      */
     @Override
     public void writeXref(Writer out) throws IOException {
-        xref.reInit(content, len);
+        xref.reInit(content.getReader());
         xref.project = project;
         xref.setDefs(defs);
         xref.write(out);
@@ -62,7 +62,7 @@ public final class JavaScriptAnalyzer extends PlainAnalyzerBase {
 
     public TokenStream tokenStream(String fieldName, Reader reader) {
         if ("refs".equals(fieldName)) {
-            cref.reInit(super.content, super.len);
+            cref.reInit(content.getReader());
             return cref;
         }
         return super.tokenStream(fieldName, reader);
@@ -74,7 +74,7 @@ public final class JavaScriptAnalyzer extends PlainAnalyzerBase {
      * @param out Writer to write HTML cross-reference
      */
     public void writeXref(Writer out) throws IOException {
-        xref.reInit(content, len);
+        xref.reInit(content.getReader());
         xref.setDefs(defs);
         xref.project = project;
         xref.write(out);
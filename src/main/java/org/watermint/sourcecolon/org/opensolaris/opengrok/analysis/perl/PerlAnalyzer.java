@@ -64,7 +64,7 @@ public final class PerlAnalyzer extends PlainAnalyzerBase {
     @Override
     public TokenStream tokenStream(String fieldName, Reader reader) {
         if ("refs".equals(fieldName)) {
-            cref.reInit(super.content, super.len);
+            cref.reInit(content.getReader());
             return cref;
         }
         return super.tokenStream(fieldName, reader);
@@ -77,7 +77,7 @@ public final class PerlAnalyzer extends PlainAnalyzerBase {
      */
     @Override
     public void writeXref(Writer out) throws IOException {
-        xref.reInit(content, len);
+        xref.reInit(content.getReader());
         xref.setDefs(defs);
         xref.project = project;
         xref.write(out);
@@ -28,12 +28,12 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.*;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.configuration.Project;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.configuration.RuntimeEnvironment;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.Writer;
-import java.util.Arrays;
 
 /**
  * Analyzer for plain text files
@@ -43,8 +43,7 @@ import java.util.Arrays;
  */
 public class PlainAnalyzerBase extends TextAnalyzer {
 
-    protected char[] content;
-    protected int len;
+    protected final ContentBuffer content;
     private final PlainFullTokenizer plainfull;
     private final PlainSymbolTokenizer plainref;
     private final PlainXref xref;
@@ -56,8 +55,7 @@ public class PlainAnalyzerBase extends TextAnalyzer {
      */
     protected PlainAnalyzerBase(FileAnalyzerFactory factory) {
         super(factory);
-        content = new char[64 * 1024];
-        len = 0;
+        content = new ContentBuffer();
         plainfull = new PlainFullTokenizer(dummy);
         plainref = new PlainSymbolTokenizer(dummy);
         xref = new PlainXref((Reader) null);
@@ -65,43 +63,57 @@ public class PlainAnalyzerBase extends TextAnalyzer {
 
     @Override
     public void analyze(Document doc, Reader in) throws IOException {
+        // the blocks are recorded before the tabs are expanded
+        LineIndex.BlockRecorder blocks = new LineIndex.BlockRecorder(in);
         Reader inReader =
-                ExpandTabsReader.wrap(in, project);
+                ExpandTabsReader.wrap(blocks, project);
 
-        len = 0;
-        do {
-            int rbytes = inReader.read(content, len, content.length - len);
-            if (rbytes >= 0) {
-                if (rbytes == (content.length - len)) {
-                    content = Arrays.copyOf(content, content.length * 2);
-                }
-                len += rbytes;
-            } else {
-                break;
-            }
-        } while (true);
+        content.read(inReader, RuntimeEnvironment.getInstance().getAnalyzerMemoryLimit());
 
         doc.add(new Field("full", dummy));
+        if (content.length() >= LineIndex.MIN_LENGTH) {
+            plainfull.reInit(content.getReader());
+            try (Reader lines = content.getReader()) {
+                doc.add(new Field("lines", blocks.create(lines, plainfull).serialize()));
+            } finally {
+                plainfull.close();
+            }
+        }
         String fullpath;
-        if ((fullpath = doc.get("fullpath")) != null && ctags != null) {
-            defs = ctags.doCtags(fullpath + "\n");
-            if (defs != null && defs.numberOfSymbols() > 0) {
-                doc.add(new Field("defs", dummy));
-                doc.add(new Field("refs", dummy)); //@FIXME adding a refs field only if it has defs?
-                byte[] tags = defs.serialize();
-                doc.add(new Field("tags", tags));
+        byte[] tags = null;
+        defs = null;
+        if (knownTags != null) {
+            try {
+                defs = Definitions.deserialize(knownTags);
+                tags = knownTags;
+            } catch (ClassNotFoundException | ClassCastException e) {
+                throw new IOException("Failed to read known definitions", e);
             }
+        } else if ((fullpath = doc.get("fullpath")) != null && ctags != null) {
+            defs = ctags.doCtags(fullpath + "\n");
         }
+        if (defs != null && defs.numberOfSymbols() > 0) {
+            doc.add(new Field("defs", dummy));
+            doc.add(new Field("refs", dummy)); //@FIXME adding a refs field only if it has defs?
+            doc.add(new Field("tags", tags != null ? tags : defs.serialize()));
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        defs = null;
+        content.clear();
     }
 
     @Override
     public TokenStream tokenStream(String fieldName, Reader reader) {
         switch (fieldName) {
             case "full":
-                plainfull.reInit(content, len);
+                plainfull.reInit(content.getReader());
                 return plainfull;
             case "refs":
-                plainref.reInit(content, len);
+                plainref.reInit(content.getReader());
                 return plainref;
             case "defs":
                 return new Hash2TokenStream(defs.getSymbols());
@@ -116,7 +128,7 @@ public class PlainAnalyzerBase extends TextAnalyzer {
      */
     @Override
     public void writeXref(Writer out) throws IOException {
-        xref.reInit(content, len);
+        xref.reInit(content.getReader());
         xref.project = project;
         xref.write(out);
     }
@@ -26,16 +26,17 @@ package org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.plain;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.ContentBuffer;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.Definitions;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.FileAnalyzerFactory;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.TextAnalyzer;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.configuration.Project;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.configuration.RuntimeEnvironment;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.Writer;
-import java.util.Arrays;
 
 /**
  * Analyzes HTML files
@@ -45,8 +46,7 @@ import java.util.Arrays;
  */
 public final class XMLAnalyzer extends TextAnalyzer {
 
-    private char[] content;
-    private int len;
+    private final ContentBuffer content;
     private final PlainFullTokenizer plainfull;
     private final XMLXref xref;
     private static final Reader dummy = new StringReader("");
@@ -56,33 +56,27 @@ public final class XMLAnalyzer extends TextAnalyzer {
      */
     protected XMLAnalyzer(FileAnalyzerFactory factory) {
         super(factory);
-        content = new char[64 * 1024];
-        len = 0;
+        content = new ContentBuffer();
         plainfull = new PlainFullTokenizer(dummy);
         xref = new XMLXref(dummy);
     }
 
     @Override
     public void analyze(Document doc, Reader in) throws IOException {
-        len = 0;
-        do {
-            int rbytes = in.read(content, len, content.length - len);
-            if (rbytes > 0) {
-                if (rbytes == (content.length - len)) {
-                    content = Arrays.copyOf(content, content.length * 2);
-                }
-                len += rbytes;
-            } else {
-                break;
-            }
-        } while (true);
+        content.read(in, RuntimeEnvironment.getInstance().getAnalyzerMemoryLimit());
 
         doc.add(new Field("full", dummy));
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        content.clear();
+    }
+
     public TokenStream tokenStream(String fieldName, Reader reader) {
         if ("full".equals(fieldName)) {
-            plainfull.reInit(content, len);
+            plainfull.reInit(content.getReader());
             return plainfull;
         }
         return super.tokenStream(fieldName, reader);
@@ -94,7 +88,7 @@ public final class XMLAnalyzer extends TextAnalyzer {
      * @param out Writer to write HTML cross-reference
      */
     public void writeXref(Writer out) throws IOException {
-        xref.reInit(content, len);
+        xref.reInit(content.getReader());
         xref.project = project;
         xref.write(out);
     }
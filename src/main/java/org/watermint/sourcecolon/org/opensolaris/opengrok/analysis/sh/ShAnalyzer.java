@@ -64,7 +64,7 @@ public final class ShAnalyzer extends PlainAnalyzerBase {
 
     public TokenStream tokenStream(String fieldName, Reader reader) {
         if ("refs".equals(fieldName)) {
-            shref.reInit(super.content, super.len);
+            shref.reInit(content.getReader());
             return shref;
         }
         return super.tokenStream(fieldName, reader);
@@ -76,7 +76,7 @@ public final class ShAnalyzer extends PlainAnalyzerBase {
      * @param out Writer to write HTML cross-reference
      */
     public void writeXref(Writer out) throws IOException {
-        xref.reInit(content, len);
+        xref.reInit(content.getReader());
         xref.project = project;
         xref.setDefs(super.defs);
         xref.write(out);
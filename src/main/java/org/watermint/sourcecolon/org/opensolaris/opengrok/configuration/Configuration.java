@@ -53,6 +53,34 @@ public final class Configuration {
     private boolean verbose;
     //if below is set, then we count how many files per project we need to process and print percentage of completion per project
     private boolean printProgress;
+    //number of analyzer threads feeding the index writer of a single project, 1 means serial indexing
+    private int analyzerThreads;
+    //milliseconds to collect file system changes before the watching indexer updates the index
+    private long watchBatchDelay;
+    //number of ctags processes shared by the analyzer threads, 0 means one per analyzer thread
+    private int ctagsProcesses;
+    //number of files sent to a ctags process before its first result is read
+    private int ctagsPipelineDepth;
+    //milliseconds before a ctags process which doesn't answer is restarted, 0 means no limit
+    private long ctagsTimeout;
+    //number of added documents after which an update commits its work so far, 0 means no limit
+    private int commitDocuments;
+    //milliseconds after which an update commits its work so far, 0 means no limit
+    private long commitInterval;
+    //settings of the index writer: default, bulk-build or incremental
+    private String indexProfile;
+    //merge the index down to this many segments after it is generated, 0 means don't merge
+    private int forceMergeSegments;
+    //characters of a file an analyzer keeps in memory, the rest is buffered in a temporary file
+    private int analyzerMemoryLimit;
+    //bytes the web application may use to cache search results, 0 disables the cache
+    private long searchCacheSize;
+    //milliseconds a cached search result is valid
+    private long searchCacheTimeout;
+    //threads searching the projects of a multi-project search in parallel, 0 means search them sequentially
+    private int searchThreads;
+    //milliseconds a search may take, 0 means no limit
+    private long searchTimeout;
     private boolean allowLeadingWildcard;
     private IgnoredNames ignoredNames;
     private boolean useLuceneLocking;
@@ -101,6 +129,20 @@ public final class Configuration {
         setIndexWordLimit(Integer.MAX_VALUE);
         setVerbose(false);
         setPrintProgress(false);
+        setAnalyzerThreads(1);
+        setWatchBatchDelay(1000);
+        setCtagsProcesses(0);
+        setCtagsPipelineDepth(1);
+        setCtagsTimeout(60000);
+        setCommitDocuments(0);
+        setCommitInterval(300000);
+        setIndexProfile("default");
+        setForceMergeSegments(0);
+        setAnalyzerMemoryLimit(16 * 1024 * 1024);
+        setSearchCacheSize(16 * 1024 * 1024);
+        setSearchCacheTimeout(10 * 60 * 1000);
+        setSearchThreads(0);
+        setSearchTimeout(30 * 1000);
         setGenerateHtml(true);
         setQuickContextScan(false);
         setIgnoredNames(new IgnoredNames());
@@ -226,6 +268,118 @@ public final class Configuration {
         this.printProgress = printProgress;
     }
 
+    public int getAnalyzerThreads() {
+        return analyzerThreads;
+    }
+
+    public void setAnalyzerThreads(int analyzerThreads) {
+        this.analyzerThreads = analyzerThreads;
+    }
+
+    public long getWatchBatchDelay() {
+        return watchBatchDelay;
+    }
+
+    public void setWatchBatchDelay(long watchBatchDelay) {
+        this.watchBatchDelay = watchBatchDelay;
+    }
+
+    public int getCtagsProcesses() {
+        return ctagsProcesses;
+    }
+
+    public void setCtagsProcesses(int ctagsProcesses) {
+        this.ctagsProcesses = ctagsProcesses;
+    }
+
+    public int getCtagsPipelineDepth() {
+        return ctagsPipelineDepth;
+    }
+
+    public void setCtagsPipelineDepth(int ctagsPipelineDepth) {
+        this.ctagsPipelineDepth = ctagsPipelineDepth;
+    }
+
+    public long getCtagsTimeout() {
+        return ctagsTimeout;
+    }
+
+    public void setCtagsTimeout(long ctagsTimeout) {
+        this.ctagsTimeout = ctagsTimeout;
+    }
+
+    public int getCommitDocuments() {
+        return commitDocuments;
+    }
+
+    public void setCommitDocuments(int commitDocuments) {
+        this.commitDocuments = commitDocuments;
+    }
+
+    public long getCommitInterval() {
+        return commitInterval;
+    }
+
+    public void setCommitInterval(long commitInterval) {
+        this.commitInterval = commitInterval;
+    }
+
+    public String getIndexProfile() {
+        return indexProfile;
+    }
+
+    public void setIndexProfile(String indexProfile) {
+        this.indexProfile = indexProfile;
+    }
+
+    public int getForceMergeSegments() {
+        return forceMergeSegments;
+    }
+
+    public void setForceMergeSegments(int forceMergeSegments) {
+        this.forceMergeSegments = forceMergeSegments;
+    }
+
+    public int getAnalyzerMemoryLimit() {
+        return analyzerMemoryLimit;
+    }
+
+    public void setAnalyzerMemoryLimit(int analyzerMemoryLimit) {
+        this.analyzerMemoryLimit = analyzerMemoryLimit;
+    }
+
+    public long getSearchCacheSize() {
+        return searchCacheSize;
+    }
+
+    public void setSearchCacheSize(long searchCacheSize) {
+        this.searchCacheSize = searchCacheSize;
+    }
+
+    public long getSearchCacheTimeout() {
+        return searchCacheTimeout;
+    }
+
+    public void setSearchCacheTimeout(long searchCacheTimeout) {
+        this.searchCacheTimeout = searchCacheTimeout;
+    }
+
+    public int getSearchThreads() {
+        return searchThreads;
+    }
+
+    public void setSearchThreads(int searchThreads) {
+        this.searchThreads = searchThreads;
+    }
+
+    public long getSearchTimeout() {
+        return searchTimeout;
+    }
+
+    public void setSearchTimeout(long searchTimeout) {
+        this.searchTimeout = searchTimeout;
+    }
+
     public void setAllowLeadingWildcard(boolean allowLeadingWildcard) {
         this.allowLeadingWildcard = allowLeadingWildcard;
     }
@@ -264,6 +264,8 @@ public final class RuntimeEnvironment {
      */
     public void setCtags(String ctags) {
         threadConfig.get().setCtags(ctags);
+        // validate the new program the next time it is used
+        exuberantCtagsAvailable = null;
     }
 
     public int getCachePages() {
@@ -431,6 +433,282 @@ public final class RuntimeEnvironment {
         threadConfig.get().setPrintProgress(printP);
     }
 
+    /**
+     * Get the number of analyzer threads used to index a single project.
+     *
+     * @return the number of analyzer threads per project (1 if the files are
+     *         analyzed serially by the thread running the update)
+     */
+    public int getAnalyzerThreads() {
+        return threadConfig.get().getAnalyzerThreads();
+    }
+
+    /**
+     * Set the number of analyzer threads used to index a single project.
+     *
+     * @param analyzerThreads the number of analyzer threads per project
+     */
+    public void setAnalyzerThreads(int analyzerThreads) {
+        threadConfig.get().setAnalyzerThreads(analyzerThreads);
+    }
+
+    /**
+     * Get how long the watching indexer collects file system changes before
+     * it updates the index.
+     *
+     * @return the delay in milliseconds
+     */
+    public long getWatchBatchDelay() {
+        return threadConfig.get().getWatchBatchDelay();
+    }
+
+    /**
+     * Set how long the watching indexer collects file system changes before
+     * it updates the index.
+     *
+     * @param watchBatchDelay the delay in milliseconds
+     */
+    public void setWatchBatchDelay(long watchBatchDelay) {
+        threadConfig.get().setWatchBatchDelay(watchBatchDelay);
+    }
+
+    /**
+     * Get the number of ctags processes shared by the analyzer threads of a
+     * project.
+     *
+     * @return the number of ctags processes (0 for one per analyzer thread)
+     */
+    public int getCtagsProcesses() {
+        return threadConfig.get().getCtagsProcesses();
+    }
+
+    /**
+     * Set the number of ctags processes shared by the analyzer threads of a
+     * project.
+     *
+     * @param ctagsProcesses the number of ctags processes (0 for one per
+     *                       analyzer thread)
+     */
+    public void setCtagsProcesses(int ctagsProcesses) {
+        threadConfig.get().setCtagsProcesses(ctagsProcesses);
+    }
+
+    /**
+     * Get how many files may be queued in a single ctags process.
+     *
+     * @return the number of files in flight per ctags process
+     */
+    public int getCtagsPipelineDepth() {
+        return threadConfig.get().getCtagsPipelineDepth();
+    }
+
+    /**
+     * Set how many files may be queued in a single ctags process.
+     *
+     * @param ctagsPipelineDepth the number of files in flight per ctags
+     *                           process
+     */
+    public void setCtagsPipelineDepth(int ctagsPipelineDepth) {
+        threadConfig.get().setCtagsPipelineDepth(ctagsPipelineDepth);
+    }
+
+    /**
+     * Get how long to wait for the definitions of a file before the ctags
+     * process is considered hung and restarted.
+     *
+     * @return the timeout in milliseconds (0 for no limit)
+     */
+    public long getCtagsTimeout() {
+        return threadConfig.get().getCtagsTimeout();
+    }
+
+    /**
+     * Set how long to wait for the definitions of a file before the ctags
+     * process is considered hung and restarted.
+     *
+     * @param ctagsTimeout the timeout in milliseconds (0 for no limit)
+     */
+    public void setCtagsTimeout(long ctagsTimeout) {
+        threadConfig.get().setCtagsTimeout(ctagsTimeout);
+    }
+
+    /**
+     * Get the number of added documents after which an update of the index
+     * commits the work done so far.
+     *
+     * @return the number of documents (0 for no limit)
+     */
+    public int getCommitDocuments() {
+        return threadConfig.get().getCommitDocuments();
+    }
+
+    /**
+     * Set the number of added documents after which an update of the index
+     * commits the work done so far.
+     *
+     * @param commitDocuments the number of documents (0 for no limit)
+     */
+    public void setCommitDocuments(int commitDocuments) {
+        threadConfig.get().setCommitDocuments(commitDocuments);
+    }
+
+    /**
+     * Get the time after which an update of the index commits the work done
+     * so far.
+     *
+     * @return the interval in milliseconds (0 for no limit)
+     */
+    public long getCommitInterval() {
+        return threadConfig.get().getCommitInterval();
+    }
+
+    /**
+     * Set the time after which an update of the index commits the work done
+     * so far.
+     *
+     * @param commitInterval the interval in milliseconds (0 for no limit)
+     */
+    public void setCommitInterval(long commitInterval) {
+        threadConfig.get().setCommitInterval(commitInterval);
+    }
+
+    /**
+     * Get the name of the profile used to configure the index writer.
+     *
+     * @return "default", "bulk-build" or "incremental"
+     */
+    public String getIndexProfile() {
+        return threadConfig.get().getIndexProfile();
+    }
+
+    /**
+     * Set the name of the profile used to configure the index writer.
+     *
+     * @param indexProfile "default", "bulk-build" or "incremental"
+     */
+    public void setIndexProfile(String indexProfile) {
+        threadConfig.get().setIndexProfile(indexProfile);
+    }
+
+    /**
+     * Get the number of segments the index of a project is merged down to
+     * after it is generated.
+     *
+     * @return the maximum number of segments (0 if the index isn't merged)
+     */
+    public int getForceMergeSegments() {
+        return threadConfig.get().getForceMergeSegments();
+    }
+
+    /**
+     * Set the number of segments the index of a project is merged down to
+     * after it is generated.
+     *
+     * @param forceMergeSegments the maximum number of segments (0 if the
+     *                           index shouldn't be merged)
+     */
+    public void setForceMergeSegments(int forceMergeSegments) {
+        threadConfig.get().setForceMergeSegments(forceMergeSegments);
+    }
+
+    /**
+     * Get the number of characters of a file an analyzer keeps in memory.
+     * The rest of a larger file is buffered in a temporary file while the
+     * file is analyzed.
+     *
+     * @return the number of characters
+     */
+    public int getAnalyzerMemoryLimit() {
+        return threadConfig.get().getAnalyzerMemoryLimit();
+    }
+
+    /**
+     * Set the number of characters of a file an analyzer keeps in memory.
+     *
+     * @param analyzerMemoryLimit the number of characters
+     */
+    public void setAnalyzerMemoryLimit(int analyzerMemoryLimit) {
+        threadConfig.get().setAnalyzerMemoryLimit(analyzerMemoryLimit);
+    }
+
+    /**
+     * Get the amount of memory the web application may use to cache search
+     * results.
+     *
+     * @return the size of the cache in bytes (0 if disabled)
+     */
+    public long getSearchCacheSize() {
+        return threadConfig.get().getSearchCacheSize();
+    }
+
+    /**
+     * Set the amount of memory the web application may use to cache search
+     * results.
+     *
+     * @param searchCacheSize the size of the cache in bytes (0 to disable it)
+     */
+    public void setSearchCacheSize(long searchCacheSize) {
+        threadConfig.get().setSearchCacheSize(searchCacheSize);
+    }
+
+    /**
+     * Get how long a cached search result may be used.
+     *
+     * @return the time in milliseconds
+     */
+    public long getSearchCacheTimeout() {
+        return threadConfig.get().getSearchCacheTimeout();
+    }
+
+    /**
+     * Set how long a cached search result may be used.
+     *
+     * @param searchCacheTimeout the time in milliseconds
+     */
+    public void setSearchCacheTimeout(long searchCacheTimeout) {
+        threadConfig.get().setSearchCacheTimeout(searchCacheTimeout);
+    }
+
+    /**
+     * Get the number of threads searching the projects of a multi-project
+     * search in parallel.
+     *
+     * @return the number of threads (0 if the projects are searched
+     *         sequentially)
+     */
+    public int getSearchThreads() {
+        return threadConfig.get().getSearchThreads();
+    }
+
+    /**
+     * Set the number of threads searching the projects of a multi-project
+     * search in parallel.
+     *
+     * @param searchThreads the number of threads (0 to search the projects
+     *                      sequentially)
+     */
+    public void setSearchThreads(int searchThreads) {
+        threadConfig.get().setSearchThreads(searchThreads);
+    }
+
+    /**
+     * Get how long a search may take.
+     *
+     * @return the time in milliseconds (0 if unlimited)
+     */
+    public long getSearchTimeout() {
+        return threadConfig.get().getSearchTimeout();
+    }
+
+    /**
+     * Set how long a search may take.
+     *
+     * @param searchTimeout the time in milliseconds (0 for no limit)
+     */
+    public void setSearchTimeout(long searchTimeout) {
+        threadConfig.get().setSearchTimeout(searchTimeout);
+    }
+
     /**
      * Specify if a search may start with a wildcard. Note that queries
      * that start with a wildcard will give a significant impact on the
@@ -0,0 +1,119 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+package org.watermint.sourcecolon.org.opensolaris.opengrok.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A list of added, modified and deleted files, used to update the index
+ * without comparing the whole source tree with it. The list is read in the
+ * format printed by {@code git diff --name-status}: one file per line,
+ * preceded by a status letter and a tab. Lines without a status just name a
+ * file or directory which changed in some way. The paths are relative to the
+ * source root.
+ * <p/>
+ * Example:
+ * <pre>
+ * A	src/new.c
+ * M	src/main.c
+ * D	src/old.c
+ * R100	src/before.c	src/after.c
+ * </pre>
+ */
+final class ChangeList {
+
+    private final List<String> added = new ArrayList<>();
+    private final List<String> modified = new ArrayList<>();
+    private final List<String> deleted = new ArrayList<>();
+
+    List<String> getAdded() {
+        return added;
+    }
+
+    List<String> getModified() {
+        return modified;
+    }
+
+    List<String> getDeleted() {
+        return deleted;
+    }
+
+    boolean isEmpty() {
+        return added.isEmpty() && modified.isEmpty() && deleted.isEmpty();
+    }
+
+    /**
+     * Read a change list.
+     *
+     * @param in where to read the list from
+     * @return the change list
+     * @throws IOException    if an error occurs while reading the list
+     * @throws ParseException if a line has an unknown status
+     */
+    static ChangeList read(Reader in) throws IOException, ParseException {
+        ChangeList changes = new ChangeList();
+        BufferedReader reader = new BufferedReader(in);
+        String line;
+        int lineno = 0;
+        while ((line = reader.readLine()) != null) {
+            lineno++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            if (fields.length == 1) {
+                changes.modified.add(line.trim());
+                continue;
+            }
+            // a line which starts with a tab has no status
+            switch (fields[0].isEmpty() ? ' ' : fields[0].charAt(0)) {
+                case 'A':
+                case 'C':
+                    changes.added.add(fields[fields.length - 1]);
+                    break;
+                case 'M':
+                case 'T':
+                    changes.modified.add(fields[1]);
+                    break;
+                case 'D':
+                    changes.deleted.add(fields[1]);
+                    break;
+                case 'R':
+                    if (fields.length != 3) {
+                        throw new ParseException("Expected two paths for a rename: " + line, lineno);
+                    }
+                    changes.deleted.add(fields[1]);
+                    changes.added.add(fields[2]);
+                    break;
+                default:
+                    throw new ParseException("Unknown change status \"" + fields[0] + "\": " + line, lineno);
+            }
+        }
+        return changes;
+    }
+}
@@ -72,16 +72,21 @@ public class CommandLineOptions {
         options.add(new Option('?', null, "Help"));
         options.add(new Option('A', "ext:analyzer", "Files with the named extension should be analyzed with the specified class"));
         options.add(new Option('a', ON_OFF, "Allow or disallow leading wildcards in a search"));
-        options.add(new Option('C', null, "Print per project percentage progress information(I/O extensive, since one read through dir structure is made before indexing, needs -v, otherwise it just goes to the log)"));
+        options.add(new Option('b', "profile", "Settings of the index writer: \"default\" (the Lucene defaults), \"bulk-build\" (large RAM buffer, concurrent merges, no compound files, for generating a large index) or \"incremental\" (small flushes, few segments, for keeping an index up to date)"));
+        options.add(new Option('C', null, "Print per project percentage progress information(the file listing of a project is collected in memory before indexing, needs -v, otherwise it just goes to the log)"));
         options.add(new Option('c', "/path/to/ctags", "Path to Exuberant Ctags from http://ctags.sf.net by default takes the Exuberant Ctags in PATH."));
+        options.add(new Option('D', null, "Keep running after the index is generated, and update it as files below the source root change"));
         options.add(new Option('d', "/path/to/data/root", "The directory where OpenGrok stores the generated data"));
         options.add(new Option('e', null, "Economical - consumes less disk space. It does not generate hyper text cross reference files offline, but will do so on demand - which could be sightly slow."));
         options.add(new Option('I', "pattern", "Only files matching this pattern will be examined (supports wildcards, example: -I *.java -I *.c)"));
         options.add(new Option('i', "pattern", "Ignore the named files or directories (supports wildcards, example: -i *.so -i *.dll)"));
+        options.add(new Option('j', NUMBER, "The number of analyzer threads to use within a single project. Files are analyzed in parallel and fed to the index writer of the project. By default files are analyzed serially"));
         options.add(new Option('l', ON_OFF, "Turn on/off locking of the Lucene database during index generation"));
+        options.add(new Option('M', NUMBER, "The number of characters of a file an analyzer keeps in memory. The rest of a larger file is buffered in a temporary file while it is analyzed. Default: 16M"));
         options.add(new Option('m', NUMBER, "The maximum words to index in a file"));
         options.add(new Option('N', "/path/to/symlink", "Allow this symlink to be followed. Option may be repeated."));
         options.add(new Option('n', null, "Do not generate indexes, but process all other command line options"));
+        options.add(new Option('O', NUMBER, "Merge the index of each project down to at most this many segments after the whole project has been indexed"));
         options.add(new Option('P', null, "Generate a project for each of the top-level directories in source root"));
         options.add(new Option('p', "/path/to/default/project", "This is the path to the project that should be selected by default in the web application(when no other project set either in cookie or in parameter). You should strip off the source root."));
         options.add(new Option('Q', ON_OFF, "Turn on/off quick context scan. By default only the first 32k of a file is scanned, and a '[..all..]' link is inserted if the file is bigger. Activating this may slow the server down (Note: this is setting only affects the web application)"));
@@ -89,6 +94,7 @@ public class CommandLineOptions {
         options.add(new Option('s', "/path/to/source/root", "The root directory of the source tree"));
         options.add(new Option('T', NUMBER, "The number of threads to use for index generation. By default the number of threads will be set to the number of available CPUs"));
         options.add(new Option('t', NUMBER, "Default tabsize to use (number of spaces per tab character)"));
+        options.add(new Option('U', "/path/to/changelist", "Only update the index for the files in the change list instead of comparing the whole source tree with the index. The list uses the format of \"git diff --name-status\" (or a plain list of paths) relative to the source root, \"-\" reads it from the standard input"));
         options.add(new Option('V', null, "Print version and quit"));
         options.add(new Option('v', null, "Print progress information as we go along"));
         options.add(new Option('W', "/path/to/configuration", "Write the current configuration to the specified file (so that the web application can use the same configuration"));
@@ -24,15 +24,21 @@
 
 package org.watermint.sourcecolon.org.opensolaris.opengrok.index;
 
+import org.apache.lucene.analysis.LimitTokenCountAnalyzer;
 import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldSelector;
 import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.document.SetBasedFieldSelector;
 import org.apache.lucene.index.*;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.spell.LuceneDictionary;
+import org.apache.lucene.search.spell.PlainTextDictionary;
 import org.apache.lucene.search.spell.SpellChecker;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.LockFactory;
@@ -50,11 +56,20 @@ import org.watermint.sourcecolon.org.opensolaris.opengrok.search.QueryBuilder;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.web.Util;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.List;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -71,6 +86,7 @@ public class IndexDatabase {
     private FSDirectory indexDirectory;
     private FSDirectory spellDirectory;
     private IndexWriter writer;
+    private IndexReader reader;
     private TermEnum termEnum;
     private IgnoredNames ignoredNames;
     private Filter includedNames;
@@ -83,6 +99,40 @@ public class IndexDatabase {
     private static final Logger log = Logger.getLogger(IndexDatabase.class.getName());
     private Ctags ctags;
     private LockFactory lockFactory;
+    private ExecutorService analyzerPool;
+    private Semaphore analyzerSlots;
+    private int uncommitted;
+    private long lastCommit;
+    /**
+     * Directories of removed xref files, which are removed at the end of the
+     * update if they are empty. They are not removed right away, since an
+     * analyzer thread may be about to write a new xref into one of them.
+     */
+    private final Set<File> xrefDirs = new HashSet<>();
+    /**
+     * File in the index directory holding the last file added before an
+     * intermediate commit. It is removed when the update completes.
+     */
+    private static final String CHECKPOINT = "checkpoint";
+    /**
+     * The definitions added or removed during an update, whose spelling
+     * suggestions may have to be updated, or null if the spelling index has
+     * to be generated from scratch.
+     */
+    private volatile Set<String> spellWords;
+    private static final int MAX_SPELL_WORDS = 100000;
+    /**
+     * File in the spelling index directory which is touched when the
+     * spelling index is generated from scratch.
+     */
+    private static final String SPELL_REBUILT = "rebuilt";
+    private static final long SPELL_REBUILD_INTERVAL = 7 * 24 * 60 * 60 * 1000L;
+    /**
+     * The stored fields of a document with the same content as a file to
+     * add. The definitions are only read for the document which is used.
+     */
+    private static final FieldSelector KNOWN_FIELDS = new SetBasedFieldSelector(
+            new HashSet<>(Arrays.asList("path", "date")), Collections.singleton("tags"));
 
     /**
      * Create a new instance of the Index Database. Use this constructor if
@@ -211,12 +261,188 @@ public class IndexDatabase {
         return false;
     }
 
+    /**
+     * Update the index databases for some files or directories only. The
+     * paths are grouped per project, and the documents below each path are
+     * brought up to date with the source tree.
+     *
+     * @param paths    the files or directories to update (from source root)
+     * @param listener where to signal the changes to the database
+     * @throws IOException if an error occurs
+     * @see #update(Collection)
+     */
+    static void update(Collection<String> paths, IndexChangedListener listener) throws IOException {
+        for (Map.Entry<Project, List<String>> entry : groupByProject(paths).entrySet()) {
+            IndexDatabase db = entry.getKey() == null ? new IndexDatabase() : new IndexDatabase(entry.getKey());
+            if (listener != null) {
+                db.addIndexChangedListener(listener);
+            }
+            db.update(entry.getValue());
+        }
+    }
+
+    /**
+     * Update the index databases for the files in a change list only.
+     *
+     * @param changes  the added, modified and deleted files
+     * @param listener where to signal the changes to the database
+     * @throws IOException if an error occurs
+     * @see #update(Collection, Collection, Collection)
+     */
+    static void update(ChangeList changes, IndexChangedListener listener) throws IOException {
+        Map<Project, List<String>> added = groupByProject(changes.getAdded());
+        Map<Project, List<String>> modified = groupByProject(changes.getModified());
+        Map<Project, List<String>> deleted = groupByProject(changes.getDeleted());
+
+        Set<Project> projects = new LinkedHashSet<>(added.keySet());
+        projects.addAll(modified.keySet());
+        projects.addAll(deleted.keySet());
+        for (Project p : projects) {
+            IndexDatabase db = p == null ? new IndexDatabase() : new IndexDatabase(p);
+            if (listener != null) {
+                db.addIndexChangedListener(listener);
+            }
+            List<String> none = Collections.emptyList();
+            db.update(added.containsKey(p) ? added.get(p) : none,
+                    modified.containsKey(p) ? modified.get(p) : none,
+                    deleted.containsKey(p) ? deleted.get(p) : none);
+        }
+    }
+
+    private static Map<Project, List<String>> groupByProject(Collection<String> paths) {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        Map<Project, List<String>> dbPaths = new LinkedHashMap<>();
+
+        for (String p : paths) {
+            String path = normalize(p);
+            Project project = Project.getProject(path);
+            if (project == null && env.hasProjects()) {
+                log.log(Level.WARNING, "Could not find a project for \"{0}\"", path);
+                continue;
+            }
+            List<String> list = dbPaths.get(project);
+            if (list == null) {
+                list = new ArrayList<>();
+                dbPaths.put(project, list);
+            }
+            list.add(path);
+        }
+        return dbPaths;
+    }
+
+    /**
+     * Turn a path relative to source root into the form used in the index,
+     * with a leading slash and no trailing one.
+     */
+    private static String normalize(String p) {
+        String path = p.replace('\\', '/');
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (!path.isEmpty() && path.charAt(0) != '/') {
+            path = "/" + path;
+        }
+        return path;
+    }
+
+    /**
+     * How the documents below a path should be updated.
+     */
+    private enum Change {
+        /**
+         * compare with the source tree, and reindex the files which changed
+         */
+        COMPARE,
+        /**
+         * reindex the files even if they look unchanged
+         */
+        REINDEX,
+        /**
+         * remove the documents
+         */
+        DELETE
+    }
+
     /**
      * Update the content of this index database
      *
      * @throws IOException if an error occurs
      */
     public void update() throws IOException {
+        if (directories.isEmpty()) {
+            if (project == null) {
+                directories.add("");
+            } else {
+                directories.add(project.getPath());
+            }
+        }
+        Map<String, Change> paths = new LinkedHashMap<>();
+        for (String dir : directories) {
+            paths.put(dir, Change.COMPARE);
+        }
+        update(paths, false, true);
+    }
+
+    /**
+     * Update the content of this index database for some files or
+     * directories only. A file is (re)indexed if it changed, a directory is
+     * compared with the index like the whole project is by {@link #update()},
+     * and the documents of paths which no longer exist are removed. This
+     * avoids walking the whole project when the changed paths are known.
+     *
+     * @param paths the files or directories to update (from source root)
+     * @throws IOException if an error occurs
+     */
+    public void update(Collection<String> paths) throws IOException {
+        // parents sort before their children, which are then skipped
+        Map<String, Change> changes = new TreeMap<>();
+        for (String path : paths) {
+            changes.put(normalize(path), Change.COMPARE);
+        }
+        update(changes, true, false);
+    }
+
+    /**
+     * Update the content of this index database for a list of added,
+     * modified and deleted files, for example the files changed by a
+     * commit. Only the documents (and xrefs) of these files are touched. The
+     * added and modified files are reindexed even if their modification time
+     * is unchanged, and a directory is compared with the index like the
+     * whole project is by {@link #update()}.
+     *
+     * @param added    the added files (from source root)
+     * @param modified the modified files (from source root)
+     * @param deleted  the deleted files (from source root)
+     * @throws IOException if an error occurs
+     */
+    public void update(Collection<String> added, Collection<String> modified, Collection<String> deleted) throws IOException {
+        Map<String, Change> changes = new TreeMap<>();
+        for (String path : deleted) {
+            changes.put(normalize(path), Change.DELETE);
+        }
+        // a file may be deleted and added again by a rename
+        for (String path : added) {
+            changes.put(normalize(path), Change.REINDEX);
+        }
+        for (String path : modified) {
+            changes.put(normalize(path), Change.REINDEX);
+        }
+        update(changes, true, false);
+    }
+
+    /**
+     * Bring the documents below the given paths up to date with the source
+     * tree.
+     *
+     * @param paths       the files or directories to update (from source
+     *                    root), and how to update them
+     * @param checkParent if the paths may be nested in each other or in
+     *                    ignored directories, and should be checked for it
+     * @param full        if the whole database is updated, which may be
+     *                    merged afterwards
+     * @throws IOException if an error occurs
+     */
+    private void update(Map<String, Change> paths, boolean checkParent, boolean full) throws IOException {
         synchronized (lock) {
             if (running) {
                 throw new IOException("Indexer already running!");
@@ -224,58 +450,82 @@ public class IndexDatabase {
             running = true;
         }
 
-        String ctgs = RuntimeEnvironment.getInstance().getCtags();
-        if (ctgs != null) {
-            ctags = new Ctags();
-            ctags.setBinary(ctgs);
+        File spellRebuilt = new File(spellDirectory.getDirectory(), SPELL_REBUILT);
+        if (spellRebuilt.lastModified() > System.currentTimeMillis() - SPELL_REBUILD_INTERVAL) {
+            spellWords = new HashSet<>();
+        } else {
+            // no spelling index yet, or it is due to be cleaned up
+            spellWords = null;
         }
+
+        ctags = newCtags();
         if (ctags == null) {
             log.severe("Unable to run ctags! searching definitions will not work!");
         }
 
         try {
-            writer = new IndexWriter(indexDirectory, new IndexWriterConfig(Version.LUCENE_36, AnalyzerGuru.getAnalyzer()));
-            writer.commit();
-            if (directories.isEmpty()) {
-                if (project == null) {
-                    directories.add("");
-                } else {
-                    directories.add(project.getPath());
+            RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+            IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_36, AnalyzerGuru.getAnalyzer());
+            IndexProfile profile = IndexProfile.get(env.getIndexProfile());
+            if (profile == null) {
+                log.log(Level.WARNING, "Unknown index profile \"{0}\", using the default settings", env.getIndexProfile());
+                profile = IndexProfile.DEFAULT;
+            }
+            profile.configure(iwc);
+            int analyzerThreads = env.getAnalyzerThreads();
+            if (analyzerThreads > 1) {
+                startAnalyzers(analyzerThreads);
+                // every analyzer thread adds its own documents, so let them
+                // all invert documents concurrently inside the writer
+                iwc.setMaxThreadStates(Math.max(analyzerThreads, iwc.getMaxThreadStates()));
+            }
+            File checkpoint = new File(indexDirectory.getDirectory(), CHECKPOINT);
+            if (checkpoint.isFile()) {
+                try (BufferedReader in = new BufferedReader(new FileReader(checkpoint))) {
+                    log.log(Level.INFO, "Resuming an interrupted update of {0}, files up to {1} are indexed already",
+                            new Object[]{indexDirectory.getDirectory(), in.readLine()});
                 }
+                // the definitions of the files committed before the
+                // interruption never made it into the spelling index
+                spellWords = null;
             }
-
-            for (String dir : directories) {
-                File sourceRoot;
-                if ("".equals(dir)) {
-                    sourceRoot = RuntimeEnvironment.getInstance().getSourceRootFile();
-                } else {
-                    sourceRoot = new File(RuntimeEnvironment.getInstance().getSourceRootFile(), dir);
+            writer = new IndexWriter(indexDirectory, iwc);
+            writer.commit();
+            uncommitted = 0;
+            lastCommit = System.currentTimeMillis();
+            // one snapshot for all paths, which don't overlap, and in which
+            // the analyzer threads look up known content
+            reader = IndexReader.open(indexDirectory);
+
+            Set<String> done = new HashSet<>();
+            for (Map.Entry<String, Change> entry : paths.entrySet()) {
+                String path = entry.getKey();
+                if (checkParent && !acceptParents(path, done)) {
+                    continue;
                 }
-
-                String startUid = Util.path2uid(dir, "");
-
-                try (IndexReader reader = IndexReader.open(indexDirectory)) {
-                    termEnum = reader.terms(new Term("u", startUid)); // init uid iterator
-
-                    //TODO below should be optional, since it traverses the tree once more to get total count! :(
-                    int file_cnt = 0;
-                    if (RuntimeEnvironment.getInstance().isPrintProgress()) {
-                        log.log(Level.INFO, "Counting files in {0} ...", dir);
-                        file_cnt = indexDown(sourceRoot, dir, true, 0, 0);
-                        if (log.isLoggable(Level.INFO)) {
-                            log.log(Level.INFO, "Need to process: {0} files for {1}", new Object[]{file_cnt, dir});
-                        }
-                    }
-
-                    indexDown(sourceRoot, dir, false, 0, file_cnt);
-
-                    while (termEnum.term() != null && termEnum.term().field().equals("u") && termEnum.term().text().startsWith(startUid)) {
-                        removeFile();
-                        termEnum.next();
-                    }
+                if (entry.getValue() != Change.DELETE) {
+                    // a deleted directory may still have files added below it
+                    done.add(path);
                 }
+                updatePath(path, entry.getValue());
+            }
+
+            stopAnalyzers();
+            if (full && env.getForceMergeSegments() > 0) {
+                log.log(Level.INFO, "Merging the index of {0} down to {1} segments",
+                        new Object[]{indexDirectory.getDirectory(), env.getForceMergeSegments()});
+                writer.forceMerge(env.getForceMergeSegments());
+            }
+            writer.commit();
+            // the update is complete, don't resume it
+            if (!checkpoint.delete() && checkpoint.exists()) {
+                log.log(Level.WARNING, "Failed to remove {0}", checkpoint.getAbsolutePath());
             }
         } finally {
+            stopAnalyzers();
+            removeEmptyXrefDirs();
+            closeSnapshot();
+
             if (writer != null) {
                 try {
                     writer.close();
@@ -286,6 +536,7 @@ public class IndexDatabase {
 
             if (ctags != null) {
                 ctags.close();
+                ctags = null;
             }
 
             synchronized (lock) {
@@ -293,10 +544,151 @@ public class IndexDatabase {
             }
         }
 
-        createSpellingSuggestions();
+        Set<String> words;
+        synchronized (lock) {
+            words = spellWords;
+            spellWords = null;
+        }
+        if (words == null) {
+            createSpellingSuggestions();
+        } else {
+            updateSpellingSuggestions(words);
+        }
         updateTimestamp();
     }
 
+    /**
+     * Check that a path is neither below an ignored directory nor below a
+     * path that is updated already.
+     *
+     * @param path the path to check (from source root)
+     * @param done the paths updated so far
+     * @return true if the path should be updated
+     */
+    private boolean acceptParents(String path, Set<String> done) {
+        if (done.contains(path)) {
+            return false;
+        }
+        int idx = path.length();
+        while ((idx = path.lastIndexOf('/', idx - 1)) > 0) {
+            String parent = path.substring(0, idx);
+            if (done.contains(parent) || ignoredNames.ignore(parent.substring(parent.lastIndexOf('/') + 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compare the documents below a path with the source tree, and add,
+     * replace or remove documents as needed.
+     *
+     * @param path   the file or directory to update (from source root)
+     * @param change how to update the documents
+     * @throws IOException if an error occurs
+     */
+    private void updatePath(String path, Change change) throws IOException {
+        File sourceRoot;
+        if ("".equals(path)) {
+            sourceRoot = RuntimeEnvironment.getInstance().getSourceRootFile();
+        } else {
+            sourceRoot = new File(RuntimeEnvironment.getInstance().getSourceRootFile(), path);
+        }
+
+        String startUid = Util.path2uid(path, "");
+
+        if (termEnum != null) {
+            termEnum.close();
+        }
+        termEnum = reader.terms(new Term("u", startUid)); // init uid iterator
+
+        if (change == Change.DELETE) {
+            log.log(Level.FINE, "Removing {0}", path);
+        } else if (!sourceRoot.isDirectory()) {
+            // a single file, which is removed below if it's gone
+            if (sourceRoot.exists()) {
+                String parent = path.substring(0, path.lastIndexOf('/'));
+                PendingFile file = accept(sourceRoot.getParentFile(), sourceRoot.toPath(), parent);
+                if (file != null && change == Change.REINDEX) {
+                    removeFiles(startUid, true);
+                    scheduleFile(file);
+                } else if (file != null) {
+                    indexFile(file, 1, 0);
+                }
+            }
+        } else if (!accept(sourceRoot)) {
+            log.log(Level.FINE, "Skipped {0}", sourceRoot.getAbsolutePath());
+        } else if (RuntimeEnvironment.getInstance().isPrintProgress()) {
+            // walk the tree once and keep the listing, so that
+            // we know the total count before we start indexing
+            log.log(Level.INFO, "Counting files in {0} ...", path);
+            List<PendingFile> files = new ArrayList<>();
+            indexDown(sourceRoot, path, files, 0);
+            int file_cnt = files.size();
+            if (log.isLoggable(Level.INFO)) {
+                log.log(Level.INFO, "Need to process: {0} files for {1}", new Object[]{file_cnt, path});
+            }
+            for (int i = 0; i < file_cnt; i++) {
+                PendingFile pending = files.set(i, null);
+                indexFile(pending, i + 1, file_cnt);
+            }
+        } else {
+            indexDown(sourceRoot, path, null, 0);
+        }
+
+        removeFiles(startUid, false);
+        awaitAnalyzers();
+    }
+
+    /**
+     * Close the snapshot of the index and its uid iterator, once the
+     * analyzer threads have stopped.
+     */
+    private void closeSnapshot() {
+        try {
+            if (termEnum != null) {
+                termEnum.close();
+            }
+            if (reader != null) {
+                reader.close();
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, "An error occurred while closing reader", e);
+        } finally {
+            termEnum = null;
+            reader = null;
+        }
+    }
+
+    /**
+     * Remove the documents at the current position of the uid iterator
+     * whose uids start with the given prefix.
+     *
+     * @param startUid the uid prefix
+     * @param keepXref if the xref files should be kept, because the files are
+     *                 added again
+     * @throws IOException if an error occurs
+     */
+    private void removeFiles(String startUid, boolean keepXref) throws IOException {
+        while (termEnum.term() != null && termEnum.term().field().equals("u") && termEnum.term().text().startsWith(startUid)) {
+            removeFile(keepXref);
+            termEnum.next();
+        }
+    }
+
+    /**
+     * Check if the current term of the uid iterator is a uid of the file with
+     * the given uid prefix, that is, of any version of the file.
+     *
+     * @param prefix the uid prefix of the file ({@code path2uid(path, "")})
+     * @return true if the term belongs to the file
+     */
+    private boolean isVersionOf(String prefix) {
+        Term term = termEnum.term();
+        return term != null && term.field().equals("u") && term.text().startsWith(prefix) &&
+                term.text().indexOf('\0', prefix.length()) < 0;
+    }
+
     public void updateTimestamp() {
         RuntimeEnvironment env = RuntimeEnvironment.getInstance();
         File timestamp = new File(env.getDataRootFile(), "timestamp");
@@ -327,7 +719,12 @@ public class IndexDatabase {
             indexReader = IndexReader.open(indexDirectory);
             checker = new SpellChecker(spellDirectory);
             //TODO below seems only to index "defs" , possible bug ?
+            checker.clearIndex();
             checker.indexDictionary(new LuceneDictionary(indexReader, "defs"), new IndexWriterConfig(Version.LUCENE_36, null), true);
+            File rebuilt = new File(spellDirectory.getDirectory(), SPELL_REBUILT);
+            if (!rebuilt.createNewFile() && !rebuilt.setLastModified(System.currentTimeMillis())) {
+                log.log(Level.WARNING, "Failed to set last modified time on ''{0}''", rebuilt.getAbsolutePath());
+            }
             log.info("done");
         } catch (IOException e) {
             log.log(Level.SEVERE, "ERROR: Generating spelling: {0}", e);
@@ -339,8 +736,103 @@ public class IndexDatabase {
                     log.log(Level.WARNING, "An error occurred while closing reader", e);
                 }
             }
-            if (spellDirectory != null) {
-                spellDirectory.close();
+            if (checker != null) {
+                try {
+                    checker.close();
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "An error occurred while closing spell checker", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Update the spelling suggestions for some definitions only: the words
+     * which are no longer defined anywhere are removed, new words are added.
+     *
+     * @param words the definitions added or removed during the update
+     */
+    private void updateSpellingSuggestions(Set<String> words) {
+        if (words.isEmpty()) {
+            return;
+        }
+        IndexReader indexReader = null;
+        SpellChecker checker = null;
+
+        try {
+            log.log(Level.INFO, "Updating spelling suggestions for {0} words ... ", words.size());
+            indexReader = IndexReader.open(indexDirectory);
+            StringBuilder added = new StringBuilder();
+            List<Term> removed = new ArrayList<>();
+            for (String word : words) {
+                try (TermDocs docs = indexReader.termDocs(new Term("defs", word))) {
+                    if (docs.next()) {
+                        added.append(word).append('\n');
+                    } else {
+                        removed.add(new Term(SpellChecker.F_WORD, word));
+                    }
+                }
+            }
+
+            if (!removed.isEmpty()) {
+                try (IndexWriter spellWriter = new IndexWriter(spellDirectory, new IndexWriterConfig(Version.LUCENE_36, null))) {
+                    spellWriter.deleteDocuments(removed.toArray(new Term[removed.size()]));
+                }
+            }
+            checker = new SpellChecker(spellDirectory);
+            checker.indexDictionary(new PlainTextDictionary(new StringReader(added.toString())), new IndexWriterConfig(Version.LUCENE_36, null), false);
+            log.info("done");
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "ERROR: Generating spelling: {0}", e);
+        } finally {
+            if (indexReader != null) {
+                try {
+                    indexReader.close();
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "An error occurred while closing reader", e);
+                }
+            }
+            if (checker != null) {
+                try {
+                    checker.close();
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "An error occurred while closing spell checker", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remember the definitions of a document which is added or removed, so
+     * that their spelling suggestions can be updated. If there are too many,
+     * the spelling index is generated from scratch instead.
+     *
+     * @param tags the serialized definitions of the document (may be null)
+     */
+    private void addSpellWords(byte[] tags) {
+        if (tags == null || spellWords == null) {
+            return;
+        }
+        Set<String> words = new HashSet<>();
+        try {
+            for (String symbol : Definitions.deserialize(tags).getSymbols()) {
+                // split like the defs field is tokenized
+                for (String word : symbol.split("[^a-zA-Z_0-9]+")) {
+                    if (!word.isEmpty()) {
+                        words.add(word);
+                    }
+                }
+            }
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            log.log(Level.FINE, "Failed to read definitions", e);
+            words = null;
+        }
+        synchronized (lock) {
+            if (spellWords != null && words != null) {
+                spellWords.addAll(words);
+            }
+            if (words == null || (spellWords != null && spellWords.size() > MAX_SPELL_WORDS)) {
+                spellWords = null;
             }
         }
     }
@@ -349,80 +841,403 @@ public class IndexDatabase {
      * Remove a stale file (termEnum.term().text()) from the index database
      * (and the xref file)
      *
+     * @param keepXref if the xref file should be kept, because the file is
+     *                 added again and may reuse it
      * @throws java.io.IOException if an error occurs
      */
-    private void removeFile() throws IOException {
+    private void removeFile(boolean keepXref) throws IOException {
         String path = Util.uid2url(termEnum.term().text());
 
         for (IndexChangedListener listener : listeners) {
             listener.fileRemove(path);
         }
+        if (reader != null) {
+            try (TermDocs docs = reader.termDocs(termEnum.term())) {
+                while (docs.next()) {
+                    addSpellWords(reader.document(docs.doc(), new MapFieldSelector("tags")).getBinaryValue("tags"));
+                }
+            }
+        }
         writer.deleteDocuments(termEnum.term());
 
-        File xrefFile;
+        if (!keepXref) {
+            removeXref(path);
+        }
+        for (IndexChangedListener listener : listeners) {
+            listener.fileRemoved(path);
+        }
+    }
+
+    /**
+     * Get the xref file of a file.
+     *
+     * @param path the path to the file (from source root)
+     * @return the xref file, which may not exist
+     */
+    private File getXrefFile(String path) {
         if (RuntimeEnvironment.getInstance().isCompressXref()) {
-            xrefFile = new File(xrefDir, path + ".gz");
-        } else {
-            xrefFile = new File(xrefDir, path);
+            return new File(xrefDir, path + ".gz");
         }
-        File parent = xrefFile.getParentFile();
+        return new File(xrefDir, path);
+    }
+
+    /**
+     * Remove the xref file of a file. Its directory is removed at the end of
+     * the update if it is empty then.
+     *
+     * @param path the path to the file (from source root)
+     */
+    private void removeXref(String path) {
+        File xrefFile = getXrefFile(path);
 
         if (!xrefFile.delete() && xrefFile.exists()) {
             log.log(Level.INFO, "Failed to remove obsolete xref-file: {0}", xrefFile.getAbsolutePath());
         }
 
-        // Remove the parent directory if it's empty
-        if (parent.delete()) {
-            log.log(Level.FINE, "Removed empty xref dir:{0}", parent.getAbsolutePath());
+        synchronized (xrefDirs) {
+            xrefDirs.add(xrefFile.getParentFile());
         }
-        for (IndexChangedListener listener : listeners) {
-            listener.fileRemoved(path);
+    }
+
+    /**
+     * Remove the directories of the xref files removed during the update
+     * which are empty. Must only be called when no analyzer thread runs.
+     */
+    private void removeEmptyXrefDirs() {
+        List<File> dirs;
+        synchronized (xrefDirs) {
+            dirs = new ArrayList<>(xrefDirs);
+            xrefDirs.clear();
+        }
+        for (File dir : dirs) {
+            // only succeeds if the directory is empty
+            if (dir.delete()) {
+                log.log(Level.FINE, "Removed empty xref dir:{0}", dir.getAbsolutePath());
+            }
         }
     }
 
     /**
-     * Add a file to the Lucene index (and generate a xref file)
+     * Create the ctags instance for an update of this database. It is shared
+     * by all analyzer threads, and runs one ctags process per analyzer thread
+     * unless configured otherwise.
+     *
+     * @return a new ctags instance, or {@code null} if no ctags program is
+     *         configured
+     */
+    private Ctags newCtags() {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        String binary = env.getCtags();
+        if (binary == null) {
+            return null;
+        }
+        Ctags c = new Ctags();
+        c.setBinary(binary);
+        int processes = env.getCtagsProcesses();
+        c.setProcesses(processes > 0 ? processes : env.getAnalyzerThreads());
+        c.setPipelineDepth(env.getCtagsPipelineDepth());
+        c.setTimeout(env.getCtagsTimeout());
+        return c;
+    }
+
+    /**
+     * Start the pool of analyzer threads. The thread walking the source tree
+     * keeps the uid bookkeeping and hands the files that need to be (re)added
+     * to the analyzer threads, which analyze them and add the documents to the
+     * index writer. The analyzer threads share the pool of ctags processes.
+     *
+     * @param threads the number of analyzer threads
+     */
+    private void startAnalyzers(int threads) {
+        analyzerPool = Executors.newFixedThreadPool(threads);
+        // don't let the walker run too far ahead of the analyzers
+        analyzerSlots = new Semaphore(threads * 2);
+    }
+
+    /**
+     * Wait for the analyzer threads to finish the files handed to them and
+     * stop the pool.
+     */
+    private void stopAnalyzers() {
+        if (analyzerPool == null) {
+            return;
+        }
+        analyzerPool.shutdown();
+        while (!analyzerPool.isTerminated()) {
+            try {
+                analyzerPool.awaitTermination(999, TimeUnit.DAYS);
+            } catch (InterruptedException exp) {
+                log.log(Level.WARNING, "Received interrupt while waiting for analyzers to finish", exp);
+            }
+        }
+        analyzerPool = null;
+        analyzerSlots = null;
+    }
+
+    /**
+     * Wait for the analyzer threads to finish the files handed to them so
+     * far, without stopping the pool.
+     *
+     * @throws java.io.InterruptedIOException if interrupted while waiting
+     */
+    private void awaitAnalyzers() throws InterruptedIOException {
+        if (analyzerPool == null) {
+            return;
+        }
+        int slots = RuntimeEnvironment.getInstance().getAnalyzerThreads() * 2;
+        try {
+            analyzerSlots.acquire(slots);
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the analyzer threads");
+        }
+        analyzerSlots.release(slots);
+    }
+
+    /**
+     * Add a file to the index database, either directly or by handing it to
+     * an analyzer thread if the update runs with several analyzer threads.
      *
      * @param file The file to add
-     * @param path The path to the file (from source root)
+     * @throws java.io.InterruptedIOException if interrupted while waiting for
+     *                                        a free analyzer thread
+     * @throws IOException if an error occurs while committing
+     */
+    private void scheduleFile(final PendingFile file) throws IOException {
+        if (analyzerPool == null) {
+            addFileQuietly(file);
+        } else {
+            try {
+                analyzerSlots.acquire();
+            } catch (InterruptedException exp) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for an analyzer thread");
+            }
+            final Semaphore slots = analyzerSlots;
+            analyzerPool.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        addFileQuietly(file);
+                    } finally {
+                        slots.release();
+                    }
+                }
+            });
+        }
+        checkpoint(file.path);
+    }
+
+    /**
+     * Commit the work done so far if enough files have been added or enough
+     * time has passed since the last commit. Files are compared with the
+     * index before they are added, so if the update is interrupted, the next
+     * update skips the files committed already and resumes after them. The
+     * xref of a file is written after its document is added, but both
+     * happen in {@code addFile()}, which has returned for every file before
+     * the commit: directly for the files added in this thread, and in
+     * {@code awaitAnalyzers()} for the files handed to the analyzer threads.
+     * So a committed document always has its xref.
+     *
+     * @param path the path of the file added last (from source root)
+     * @throws IOException if an error occurs
+     */
+    private void checkpoint(String path) throws IOException {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        int commitDocuments = env.getCommitDocuments();
+        long commitInterval = env.getCommitInterval();
+        uncommitted++;
+        if ((commitDocuments > 0 && uncommitted >= commitDocuments) ||
+                (commitInterval > 0 && System.currentTimeMillis() - lastCommit >= commitInterval)) {
+            // the files handed to the analyzer threads must be in the commit
+            awaitAnalyzers();
+            writer.commit();
+            try (Writer out = new FileWriter(new File(indexDirectory.getDirectory(), CHECKPOINT))) {
+                out.write(path);
+                out.write('\n');
+            }
+            log.log(Level.FINE, "Committed {0} files, up to {1}", new Object[]{uncommitted, path});
+            uncommitted = 0;
+            lastCommit = System.currentTimeMillis();
+        }
+    }
+
+    private void addFileQuietly(PendingFile file) {
+        try {
+            addFile(file.file, file.lastModified, file.path);
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Failed to add file " + file.file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Add a file to the Lucene index (and generate a xref file)
+     *
+     * @param file         The file to add
+     * @param lastModified The modification time of the file
+     * @param path         The path to the file (from source root)
      * @throws java.io.IOException if an error occurs
      */
-    private void addFile(File file, String path) throws IOException {
+    private void addFile(File file, long lastModified, String path) throws IOException {
+        String digest = getDigest(file);
+        Document known = findDocument(digest, path);
+
         try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
             FileAnalyzer fa = AnalyzerGuru.getAnalyzer(in, path);
-            for (IndexChangedListener listener : listeners) {
-                listener.fileAdd(path, fa.getClass().getSimpleName());
+            try {
+                for (IndexChangedListener listener : listeners) {
+                    listener.fileAdd(path, fa.getClass().getSimpleName());
+                }
+                fa.setCtags(ctags);
+                fa.setProject(Project.getProject(path));
+                fa.setKnownTags(known == null ? null : known.getBinaryValue("tags"));
+
+                Document d;
+                try {
+                    d = analyzerGuru.getDocument(file, lastModified, in, path, fa);
+                } catch (Exception e) {
+                    log.log(Level.INFO, "Skipped file ''{0}'' because the analyzer didn''t " + "understand it.", path);
+                    log.log(Level.FINE, "Exception from analyzer:", e);
+                    if (xrefDir != null) {
+                        // an older version may have left its xref behind
+                        removeXref(path);
+                    }
+                    return;
+                }
+                if (digest != null) {
+                    d.add(new Field("digest", digest, Field.Store.YES, Field.Index.NOT_ANALYZED));
+                }
+
+                addSpellWords(d.getBinaryValue("tags"));
+                int wordLimit = RuntimeEnvironment.getInstance().getIndexWordLimit();
+                writer.addDocument(d, wordLimit < Integer.MAX_VALUE
+                        ? new LimitTokenCountAnalyzer(fa, wordLimit) : fa);
+                Genre g = fa.getFactory().getGenre();
+                if (xrefDir != null && (g == Genre.PLAIN || g == Genre.XREFABLE) && !reuseXref(known, path)) {
+                    File xrefFile = new File(xrefDir, path);
+                    // If mkdirs() returns false, the failure is most likely
+                    // because the file already exists. But to check for the
+                    // file first and only add it if it doesn't exists would
+                    // only increase the file IO...
+                    if (!xrefFile.getParentFile().mkdirs()) {
+                        assert xrefFile.getParentFile().exists();
+                    }
+                    fa.writeXref(xrefDir, path);
+                }
+                for (IndexChangedListener listener : listeners) {
+                    listener.fileAdded(path, fa.getClass().getSimpleName());
+                }
+            } finally {
+                // don't keep the content of a large file until the analyzer
+                // is used again
+                fa.reset();
             }
-            fa.setCtags(ctags);
-            fa.setProject(Project.getProject(path));
+        }
+    }
 
-            Document d;
-            try {
-                d = analyzerGuru.getDocument(file, in, path, fa);
-            } catch (Exception e) {
-                log.log(Level.INFO, "Skipped file ''{0}'' because the analyzer didn''t " + "understand it.", path);
-                log.log(Level.FINE, "Exception from analyzer:", e);
-                return;
+    /**
+     * Compute the digest of the content of a file, which identifies files
+     * with the same content regardless of their time stamps.
+     *
+     * @param file the file
+     * @return the hex encoded SHA-1 digest, or null if it cannot be computed
+     */
+    private static String getDigest(File file) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = in.read(buf)) != -1) {
+                md.update(buf, 0, len);
             }
+        } catch (IOException e) {
+            log.log(Level.FINE, "Failed to compute the digest of " + file.getAbsolutePath(), e);
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
 
-            writer.addDocument(d, fa);
-            Genre g = fa.getFactory().getGenre();
-            if (xrefDir != null && (g == Genre.PLAIN || g == Genre.XREFABLE)) {
-                File xrefFile = new File(xrefDir, path);
-                // If mkdirs() returns false, the failure is most likely
-                // because the file already exists. But to check for the
-                // file first and only add it if it doesn't exists would
-                // only increase the file IO...
-                if (!xrefFile.getParentFile().mkdirs()) {
-                    assert xrefFile.getParentFile().exists();
+    /**
+     * Find a document with the same content as a file in the index, as it
+     * was when the update started. A document of the same file is preferred,
+     * other files are only used if they are analyzed the same way.
+     *
+     * @param digest the digest of the content of the file (may be null)
+     * @param path   the path to the file (from source root)
+     * @return the document, or null if there is none
+     * @throws IOException if an error occurs while reading the index
+     */
+    private Document findDocument(String digest, String path) throws IOException {
+        IndexReader snapshot = reader;
+        if (digest == null || snapshot == null) {
+            return null;
+        }
+        Document found = null;
+        try (TermDocs docs = snapshot.termDocs(new Term("digest", digest))) {
+            while (docs.next()) {
+                Document doc = snapshot.document(docs.doc(), KNOWN_FIELDS);
+                String docPath = doc.get("path");
+                if (path.equals(docPath)) {
+                    return doc;
+                }
+                if (found == null && docPath != null && AnalyzerGuru.find(docPath) == AnalyzerGuru.find(path)) {
+                    found = doc;
                 }
-                fa.writeXref(xrefDir, path);
-            }
-            for (IndexChangedListener listener : listeners) {
-                listener.fileAdded(path, fa.getClass().getSimpleName());
             }
         }
+        return found;
+    }
 
+    /**
+     * Reuse the xref file of a document with the same content. The xref of
+     * the file itself is kept while it is replaced, and touched so that it
+     * isn't older than the file, which would make the web application
+     * consider it stale. The xref of another file is copied if it belongs to
+     * the same project (the xref links to the project) and has not changed
+     * since it was indexed.
+     *
+     * @param known the document with the same content (may be null)
+     * @param path  the path to the file (from source root)
+     * @return true if the xref file is up to date, false if it has to be
+     *         written
+     */
+    private boolean reuseXref(Document known, String path) {
+        if (known == null) {
+            return false;
+        }
+        String knownPath = known.get("path");
+        File xrefFile = getXrefFile(path);
+        if (path.equals(knownPath)) {
+            return xrefFile.isFile() && xrefFile.setLastModified(System.currentTimeMillis());
+        }
+        File knownFile = new File(RuntimeEnvironment.getInstance().getSourceRootFile(), knownPath);
+        File knownXref = getXrefFile(knownPath);
+        if (Project.getProject(knownPath) != Project.getProject(path) ||
+                !DateTools.timeToString(knownFile.lastModified(), DateTools.Resolution.MILLISECOND).equals(known.get("date")) ||
+                !knownXref.isFile()) {
+            return false;
+        }
+        try {
+            if (!xrefFile.getParentFile().mkdirs()) {
+                assert xrefFile.getParentFile().exists();
+            }
+            Files.copy(knownXref.toPath(), xrefFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            log.log(Level.FINE, "Failed to copy xref of " + knownPath, e);
+            return false;
+        }
     }
 
     /**
@@ -554,73 +1369,168 @@ public class IndexDatabase {
     }
 
     /**
-     * Generate indexes recursively
+     * A file found while walking the source tree, which is waiting to be
+     * checked against the index.
+     */
+    private static class PendingFile implements Comparable<PendingFile> {
+
+        final File file;
+        final String path;
+        final long lastModified;
+        final boolean directory;
+
+        PendingFile(File file, String path, BasicFileAttributes attrs) {
+            this.file = file;
+            this.path = path;
+            this.lastModified = attrs.lastModifiedTime().toMillis();
+            this.directory = attrs.isDirectory();
+        }
+
+        @Override
+        public int compareTo(PendingFile other) {
+            return file.getName().compareTo(other.file.getName());
+        }
+    }
+
+    /**
+     * Generate indexes recursively. The attributes of each entry are read
+     * once, without following links, and handed on to the index. Symbolic
+     * links are only resolved (and checked for loops) when they are found.
      *
-     * @param dir        the root indexDirectory to generate indexes for
-     * @param parent     parent
-     * @param count_only if true will just traverse the source root and count files
-     * @param cur_count  current count during the traversal of the tree
-     * @param est_total  estimate total files to process
+     * @param dir       the root indexDirectory to generate indexes for
+     * @param parent    parent
+     * @param collect   if not null, the files found are just appended to this
+     *                  list (in index order) instead of being indexed
+     * @param cur_count current count during the traversal of the tree
+     * @return the number of files found so far
      */
-    private int indexDown(File dir, String parent, boolean count_only, int cur_count, int est_total) throws IOException {
+    private int indexDown(File dir, String parent, List<PendingFile> collect, int cur_count) throws IOException {
         int lcur_count = cur_count;
 
-        if (!accept(dir)) {
+        List<PendingFile> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+            for (Path child : stream) {
+                PendingFile entry = accept(dir, child, parent);
+                if (entry != null) {
+                    files.add(entry);
+                }
+            }
+        } catch (AccessDeniedException exp) {
+            log.log(Level.WARNING, "Warning: could not read {0}", dir.getAbsolutePath());
             return lcur_count;
-        }
-
-        File[] files = dir.listFiles();
-        if (files == null) {
+        } catch (IOException exp) {
             log.log(Level.SEVERE, "Failed to get file listing for: {0}", dir.getAbsolutePath());
+            log.log(Level.FINE, "Stack Trace: ", exp);
             return lcur_count;
         }
-        Arrays.sort(files, new Comparator<File>() {
-            @Override
-            public int compare(File p1, File p2) {
-                return p1.getName().compareTo(p2.getName());
-            }
-        });
+        Collections.sort(files);
 
-        for (File file : files) {
-            if (accept(dir, file)) {
-                String path = parent + '/' + file.getName();
-
-                if (file.isDirectory()) {
-                    lcur_count = indexDown(file, path, count_only, lcur_count, est_total);
+        for (PendingFile file : files) {
+            if (file.directory) {
+                lcur_count = indexDown(file.file, file.path, collect, lcur_count);
+            } else {
+                lcur_count++;
+                if (collect != null) {
+                    collect.add(file);
                 } else {
-                    lcur_count++;
-                    if (count_only) {
-                        continue;
-                    }
+                    indexFile(file, lcur_count, 0);
+                }
+            }
+        }
 
-                    if (RuntimeEnvironment.getInstance().isPrintProgress() && est_total > 0 && log.isLoggable(Level.INFO)) {
-                        log.log(Level.INFO, "Progress: {0} ({1}%)", new Object[]{lcur_count, (lcur_count * 100.0f / est_total)});
-                    }
+        return lcur_count;
+    }
 
-                    if (termEnum != null) {
-                        String uid = Util.path2uid(path, DateTools.timeToString(file.lastModified(), DateTools.Resolution.MILLISECOND)); // construct uid for doc
-                        while (termEnum.term() != null && termEnum.term().field().equals("u") &&
-                                termEnum.term().text().compareTo(uid) < 0) {
-                            removeFile();
-                            termEnum.next();
-                        }
-
-                        if (termEnum.term() != null && termEnum.term().field().equals("u") &&
-                                termEnum.term().text().compareTo(uid) == 0) {
-                            termEnum.next(); // keep matching docs
-                            continue;
-                        }
-                    }
-                    try {
-                        addFile(file, path);
-                    } catch (Exception e) {
-                        log.log(Level.WARNING, "Failed to add file " + file.getAbsolutePath(), e);
-                    }
+    /**
+     * Check if I should accept an entry of a directory listing into the index
+     * database. This is the counterpart of {@link #accept(File)} for the tree
+     * walk, which avoids the extra file system calls for plain files and
+     * directories.
+     *
+     * @param dir    the directory being listed
+     * @param child  the entry of the directory
+     * @param parent the path of the directory (from source root)
+     * @return the entry to process, or {@code null} if it should be skipped
+     */
+    private PendingFile accept(File dir, Path child, String parent) {
+        File file = child.toFile();
+        if (ignoredNames.ignore(file)) {
+            return null;
+        }
+
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (attrs.isSymbolicLink()) {
+                if (!accept(dir, file)) {
+                    return null;
                 }
+                attrs = Files.readAttributes(child, BasicFileAttributes.class);
             }
+        } catch (IOException exp) {
+            log.log(Level.WARNING, "Warning: Failed to resolve name: {0}", file.getAbsolutePath());
+            log.log(Level.FINE, "Stack Trace: ", exp);
+            return null;
         }
 
-        return lcur_count;
+        if (attrs.isDirectory()) {
+            // always accept directories so that their files can be examined
+            return new PendingFile(file, parent + '/' + file.getName(), attrs);
+        }
+        //below will only let go files and directories, anything else is considered special and is not added
+        if (!attrs.isRegularFile()) {
+            log.log(Level.WARNING, "Warning: ignored special file {0}", file.getAbsolutePath());
+            return null;
+        }
+        if (!includedNames.isEmpty() && !includedNames.match(file)) {
+            return null;
+        }
+        // this is an unversioned file, check if it should be indexed
+        if (RuntimeEnvironment.getInstance().isIndexVersionedFilesOnly()) {
+            return null;
+        }
+        return new PendingFile(file, parent + '/' + file.getName(), attrs);
+    }
+
+    /**
+     * Check a file found in the source tree against the index. Stale
+     * documents sorting before the file are removed, and the file is added
+     * unless the index already holds an up to date document for it.
+     *
+     * @param file      the file to check
+     * @param cur_count the number of files processed so far, including this one
+     * @param est_total total files to process (0 if unknown)
+     */
+    private void indexFile(PendingFile file, int cur_count, int est_total) throws IOException {
+        if (est_total > 0 && log.isLoggable(Level.INFO)) {
+            log.log(Level.INFO, "Progress: {0} ({1}%)", new Object[]{cur_count, (cur_count * 100.0f / est_total)});
+        }
+
+        if (termEnum != null) {
+            String uid = Util.path2uid(file.path, DateTools.timeToString(file.lastModified, DateTools.Resolution.MILLISECOND)); // construct uid for doc
+            String prefix = Util.path2uid(file.path, "");
+            while (termEnum.term() != null && termEnum.term().field().equals("u") &&
+                    termEnum.term().text().compareTo(uid) < 0) {
+                // an older version of the file keeps its xref, since the
+                // content may not have changed with the time stamp
+                removeFile(isVersionOf(prefix));
+                termEnum.next();
+            }
+
+            if (termEnum.term() != null && termEnum.term().field().equals("u") &&
+                    termEnum.term().text().compareTo(uid) == 0) {
+                termEnum.next(); // keep matching docs
+                return;
+            }
+
+            // versions with a later time stamp (e.g. after checking out an
+            // older revision) are replaced as well
+            while (isVersionOf(prefix)) {
+                removeFile(true);
+                termEnum.next();
+            }
+        }
+        scheduleFile(file);
     }
 
     /**
@@ -848,7 +1758,7 @@ public class IndexDatabase {
                     // No hits, no definitions...
                     return null;
                 }
-                Document doc = searcher.doc(top.scoreDocs[0].doc);
+                Document doc = searcher.doc(top.scoreDocs[0].doc, new MapFieldSelector("path", "tags"));
                 String foundPath = doc.get("path");
 
                 // Only use the definitions if we found an exact match.
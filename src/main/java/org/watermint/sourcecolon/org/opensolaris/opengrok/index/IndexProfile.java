@@ -0,0 +1,127 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+package org.watermint.sourcecolon.org.opensolaris.opengrok.index;
+
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.TieredMergePolicy;
+
+/**
+ * Settings of the index writer for different kinds of index updates.
+ */
+enum IndexProfile {
+
+    /**
+     * The defaults of Lucene: a RAM buffer of 16 MB, and tiered merges of
+     * up to 10 segments at once into segments of up to 5 GB.
+     */
+    DEFAULT("default") {
+        @Override
+        void configure(IndexWriterConfig iwc) {
+        }
+    },
+    /**
+     * Generating a large index from scratch: a large RAM buffer so that
+     * fewer segments are flushed, several merge threads, wide merges into
+     * segments of up to 20 GB so that a large index ends up in few
+     * segments, and no compound files, which would have to be copied once
+     * more.
+     */
+    BULK_BUILD("bulk-build") {
+        @Override
+        void configure(IndexWriterConfig iwc) {
+            iwc.setRAMBufferSizeMB(128);
+
+            int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+            ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
+            cms.setMaxMergeCount(threads + 2);
+            cms.setMaxThreadCount(threads);
+            iwc.setMergeScheduler(cms);
+
+            TieredMergePolicy tmp = new TieredMergePolicy();
+            tmp.setUseCompoundFile(false);
+            tmp.setMaxMergeAtOnce(20);
+            tmp.setSegmentsPerTier(20);
+            tmp.setMaxMergedSegmentMB(20 * 1024);
+            iwc.setMergePolicy(tmp);
+        }
+    },
+    /**
+     * Keeping an index up to date with small changes: a RAM buffer of 8 MB,
+     * half the default, since an update rarely fills it, and tiered merges
+     * which keep the number of segments (and files) low for the searchers.
+     * Merged segments are kept below 1 GB, so that the deletions of a
+     * small update don't get the largest segments of the index rewritten.
+     */
+    INCREMENTAL("incremental") {
+        @Override
+        void configure(IndexWriterConfig iwc) {
+            iwc.setRAMBufferSizeMB(8);
+
+            TieredMergePolicy tmp = new TieredMergePolicy();
+            tmp.setUseCompoundFile(true);
+            tmp.setMaxMergeAtOnce(5);
+            tmp.setSegmentsPerTier(5);
+            tmp.setMaxMergedSegmentMB(1024);
+            iwc.setMergePolicy(tmp);
+        }
+    };
+
+    private final String profileName;
+
+    private IndexProfile(String profileName) {
+        this.profileName = profileName;
+    }
+
+    /**
+     * Apply the settings of this profile.
+     *
+     * @param iwc the configuration of the index writer
+     */
+    abstract void configure(IndexWriterConfig iwc);
+
+    /**
+     * Get the name of the profile, as used in the configuration.
+     *
+     * @return the name of the profile
+     */
+    String profileName() {
+        return profileName;
+    }
+
+    /**
+     * Get the profile with the given name.
+     *
+     * @param profileName name to check
+     * @return {@code null} if it doesn't match any profile, the profile
+     *         otherwise
+     */
+    static IndexProfile get(String profileName) {
+        for (IndexProfile p : values()) {
+            if (p.profileName.equals(profileName)) {
+                return p;
+            }
+        }
+        return null;
+    }
+}
@@ -33,8 +33,7 @@ import org.watermint.sourcecolon.org.opensolaris.opengrok.configuration.RuntimeE
 import org.watermint.sourcecolon.org.opensolaris.opengrok.util.Executor;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.util.GetOpts;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.net.InetAddress;
 import java.text.ParseException;
 import java.util.*;
@@ -88,6 +87,8 @@ public final class Indexer {
         String defaultProject = null;
         boolean listFiles = false;
         boolean createDict = false;
+        boolean watch = false;
+        String changeList = null;
         int noThreads = 2 + (2 * Runtime.getRuntime().availableProcessors());
 
         // Parse command line options:
@@ -127,6 +128,16 @@ public final class Indexer {
                         runIndex = false;
                         break;
 
+                    case 'b':
+                        if (IndexProfile.get(getOpts.getOptionArgument()) == null) {
+                            System.err.println("ERROR: Unknown index profile \"" + getOpts.getOptionArgument() + "\"");
+                            System.exit(1);
+                        }
+                        cfg.setIndexProfile(getOpts.getOptionArgument());
+                        break;
+                    case 'D':
+                        watch = true;
+                        break;
                     case 'e':
                         cfg.setGenerateHtml(false);
                         break;
@@ -206,6 +217,14 @@ public final class Indexer {
                             System.err.println("           \"-Q off\" will try to build a more accurate list by reading the complete file.");
                         }
 
+                        break;
+                    case 'M':
+                        try {
+                            cfg.setAnalyzerMemoryLimit(Integer.parseInt(getOpts.getOptionArgument()));
+                        } catch (NumberFormatException exp) {
+                            System.err.println("ERROR: Failed to parse argument to \"-M\": " + exp.getMessage());
+                            System.exit(1);
+                        }
                         break;
                     case 'm': {
                         try {
@@ -266,6 +285,14 @@ public final class Indexer {
                             System.exit(1);
                         }
                         break;
+                    case 'j':
+                        try {
+                            cfg.setAnalyzerThreads(Integer.parseInt(getOpts.getOptionArgument()));
+                        } catch (NumberFormatException exp) {
+                            System.err.println("ERROR: Failed to parse argument to \"-j\": " + exp.getMessage());
+                            System.exit(1);
+                        }
+                        break;
                     case 'l':
                         if (getOpts.getOptionArgument().equalsIgnoreCase(ON)) {
                             cfg.setUsingLuceneLocking(true);
@@ -277,6 +304,17 @@ public final class Indexer {
                             System.err.println("           \"-l off\" will disable locks in Lucene");
                         }
                         break;
+                    case 'O':
+                        try {
+                            cfg.setForceMergeSegments(Integer.parseInt(getOpts.getOptionArgument()));
+                        } catch (NumberFormatException exp) {
+                            System.err.println("ERROR: Failed to parse argument to \"-O\": " + exp.getMessage());
+                            System.exit(1);
+                        }
+                        break;
+                    case 'U':
+                        changeList = getOpts.getOptionArgument();
+                        break;
                     case 'V':
                         System.out.println(Info.getFullVersion());
                         System.exit(0);
@@ -342,12 +380,18 @@ public final class Indexer {
             if (!zapCache.isEmpty()) {
                 return;
             }
-            if (runIndex) {
+            if (runIndex && changeList != null) {
+                getInstance().doChangeListExecution(changeList, new DefaultIndexChangedListener());
+            } else if (runIndex) {
                 IndexChangedListener progress = new DefaultIndexChangedListener();
                 getInstance().doIndexerExecution(update, noThreads, subFiles,
                         progress);
             }
             getInstance().sendToConfigHost(configHost);
+            if (watch) {
+                log.info("Watching the source root for changes");
+                new SourceWatcher(new DefaultIndexChangedListener(), env.getWatchBatchDelay()).run();
+            }
         } catch (IndexerException ex) {
             log.log(Level.SEVERE, "Exception running indexer", ex);
             System.err.println(cmdOptions.getUsage());
@@ -522,6 +566,33 @@ public final class Indexer {
         }
     }
 
+    /**
+     * Update the index for the files in a change list only.
+     *
+     * @param changeList the file to read the change list from, or "-" to
+     *                   read it from the standard input
+     * @param progress   where to signal the changes to the database
+     * @throws IOException      if an error occurs
+     * @throws IndexerException if the change list cannot be parsed
+     */
+    public void doChangeListExecution(String changeList, IndexChangedListener progress)
+            throws IOException, IndexerException {
+        RuntimeEnvironment.getInstance().register();
+        ChangeList changes;
+        try (Reader in = "-".equals(changeList)
+                ? new InputStreamReader(System.in)
+                : new InputStreamReader(new FileInputStream(changeList))) {
+            changes = ChangeList.read(in);
+        } catch (ParseException ex) {
+            throw new IndexerException("ERROR: Failed to parse the change list (line " + ex.getErrorOffset() + "): " + ex.getMessage());
+        }
+        log.log(Level.INFO, "Updating {0} added, {1} modified and {2} deleted files",
+                new Object[]{changes.getAdded().size(), changes.getModified().size(), changes.getDeleted().size()});
+        if (!changes.isEmpty()) {
+            IndexDatabase.update(changes, progress);
+        }
+    }
+
     public void sendToConfigHost(String configHost) {
         if (configHost != null) {
             String[] cfg = configHost.split(":");
@@ -0,0 +1,208 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+package org.watermint.sourcecolon.org.opensolaris.opengrok.index;
+
+import org.watermint.sourcecolon.org.opensolaris.opengrok.configuration.Project;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.configuration.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the source root for changes and keeps the index databases up to
+ * date, without walking the whole source tree again. Changed paths are
+ * collected for a short while and then updated in one batch per project, so
+ * that a change is searchable within seconds.
+ * <p/>
+ * If the file system drops events (the watch service overflows), all of the
+ * projects are compared with the source tree again.
+ */
+final class SourceWatcher {
+
+    private static final Logger log = Logger.getLogger(SourceWatcher.class.getName());
+
+    private final Path sourceRoot;
+    private final IgnoredNames ignoredNames;
+    private final IndexChangedListener listener;
+    private final long batchDelay;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final Set<String> changed = new LinkedHashSet<>();
+    private WatchService watcher;
+
+    /**
+     * Create a watcher for the source root of the current configuration.
+     *
+     * @param listener   where to signal the changes to the database
+     * @param batchDelay how long (in milliseconds) to collect changes before
+     *                   updating the index
+     */
+    SourceWatcher(IndexChangedListener listener, long batchDelay) {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        this.sourceRoot = env.getSourceRootFile().toPath();
+        this.ignoredNames = env.getIgnoredNames();
+        this.listener = listener;
+        this.batchDelay = batchDelay;
+    }
+
+    /**
+     * Watch the source tree and update the index until the thread is
+     * interrupted.
+     *
+     * @throws IOException if the watch service cannot be created
+     */
+    void run() throws IOException {
+        try (WatchService ws = sourceRoot.getFileSystem().newWatchService()) {
+            watcher = ws;
+            registerAll(sourceRoot);
+            log.log(Level.INFO, "Watching {0} directories for changes", keys.size());
+
+            long deadline = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key;
+                try {
+                    if (changed.isEmpty()) {
+                        key = ws.take();
+                    } else {
+                        key = ws.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    }
+                } catch (InterruptedException exp) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                if (key != null) {
+                    if (changed.isEmpty()) {
+                        deadline = System.currentTimeMillis() + batchDelay;
+                    }
+                    processEvents(key);
+                }
+                if (!changed.isEmpty() && System.currentTimeMillis() >= deadline) {
+                    flush();
+                }
+            }
+        } finally {
+            keys.clear();
+            watcher = null;
+        }
+    }
+
+    private void processEvents(WatchKey key) {
+        Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || dir == null) {
+                log.warning("Lost file system events, comparing the whole source tree with the index");
+                rescan();
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            if (ignoredNames.ignore(child.toFile())) {
+                continue;
+            }
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                // the directory is indexed as a whole, but changes within it
+                // have to be watched from now on
+                registerAll(child);
+            }
+            changed.add(getPath(child));
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+    }
+
+    private void rescan() {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        if (env.hasProjects()) {
+            for (Project project : env.getProjects()) {
+                changed.add(project.getPath());
+            }
+        } else {
+            changed.add("");
+        }
+    }
+
+    private void flush() {
+        log.log(Level.FINE, "Updating {0} changed paths", changed.size());
+        try {
+            IndexDatabase.update(changed, listener);
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.SEVERE, "Problem updating lucene index database: ", e);
+        }
+        changed.clear();
+    }
+
+    /**
+     * Get the path of a file relative to source root, as used in the index.
+     */
+    private String getPath(Path file) {
+        StringBuilder sb = new StringBuilder();
+        for (Path name : sourceRoot.relativize(file)) {
+            sb.append('/').append(name.toString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Register a directory and all of its subdirectories with the watch
+     * service. Ignored directories and symbolic links are not followed.
+     */
+    private void registerAll(Path start) {
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    File file = dir.toFile();
+                    if (!dir.equals(sourceRoot) && ignoredNames.ignore(file)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    try {
+                        keys.put(dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                    } catch (IOException e) {
+                        log.log(Level.WARNING, "Failed to watch {0}: {1}", new Object[]{file.getAbsolutePath(), e.getMessage()});
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    log.log(Level.FINE, "Failed to visit {0}", file);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Failed to watch " + start, e);
+        }
+    }
+}
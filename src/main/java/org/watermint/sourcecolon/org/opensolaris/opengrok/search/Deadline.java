@@ -0,0 +1,140 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+package org.watermint.sourcecolon.org.opensolaris.opengrok.search;
+
+import org.apache.lucene.search.*;
+
+import java.io.IOException;
+
+/**
+ * The time budget of a search request. Searches run through
+ * {@link #search(IndexSearcher, Weight, Collector)} are stopped when the
+ * budget is used up, and the work done after the search (like creating the
+ * context of the hits) should check {@link #isExpired()} now and then. If
+ * anything is cut short, the deadline is marked as missed, so that the
+ * results can be flagged as partial.
+ */
+public final class Deadline {
+
+    private final long time;
+    private volatile boolean missed;
+
+    /**
+     * Create a new deadline.
+     *
+     * @param timeout the time in milliseconds from now, 0 or less for no
+     *                deadline
+     */
+    public Deadline(long timeout) {
+        time = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+    }
+
+    /**
+     * Check if there is a deadline at all.
+     *
+     * @return true if the time is limited
+     */
+    public boolean isLimited() {
+        return time != 0;
+    }
+
+    /**
+     * Get the time left until the deadline.
+     *
+     * @return the time in milliseconds, {@link Long#MAX_VALUE} if the time is
+     *         not limited
+     */
+    public long getTimeLeft() {
+        return time == 0 ? Long.MAX_VALUE : Math.max(0, time - System.currentTimeMillis());
+    }
+
+    /**
+     * Check if the deadline has passed.
+     *
+     * @return true if there is no time left
+     */
+    public boolean isExpired() {
+        return time != 0 && System.currentTimeMillis() >= time;
+    }
+
+    /**
+     * Record that some work has been cut short because of the deadline.
+     */
+    public void setMissed() {
+        missed = true;
+    }
+
+    /**
+     * Check if some work has been cut short because of the deadline.
+     *
+     * @return true if the results are partial
+     */
+    public boolean isMissed() {
+        return missed;
+    }
+
+    /**
+     * Run a search, which is stopped at the deadline.
+     *
+     * @param searcher  the searcher to use
+     * @param query     the query to search
+     * @param collector the collector of the hits, which holds the hits found
+     *                  so far if the search has been stopped
+     * @return false if the search has been stopped
+     * @throws IOException if the search fails
+     */
+    public boolean search(IndexSearcher searcher, Query query, Collector collector) throws IOException {
+        return search(searcher, searcher.createNormalizedWeight(query), collector);
+    }
+
+    /**
+     * Run a search, which is stopped at the deadline.
+     *
+     * @param searcher  the searcher to use
+     * @param weight    the weight of the query to search
+     * @param collector the collector of the hits, which holds the hits found
+     *                  so far if the search has been stopped
+     * @return false if the search has been stopped
+     * @throws IOException if the search fails
+     */
+    public boolean search(IndexSearcher searcher, Weight weight, Collector collector) throws IOException {
+        if (time == 0) {
+            searcher.search(weight, null, collector);
+            return true;
+        }
+        long timeLeft = time - System.currentTimeMillis();
+        if (timeLeft > 0) {
+            TimeLimitingCollector limited = new TimeLimitingCollector(collector,
+                    TimeLimitingCollector.getGlobalCounter(), timeLeft);
+            limited.setBaseline();
+            try {
+                searcher.search(weight, null, limited);
+                return true;
+            } catch (TimeLimitingCollector.TimeExceededException e) {
+                // the hits collected so far are kept
+            }
+        }
+        missed = true;
+        return false;
+    }
+}
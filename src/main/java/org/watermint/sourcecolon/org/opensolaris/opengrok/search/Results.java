@@ -25,12 +25,15 @@
 package org.watermint.sourcecolon.org.opensolaris.opengrok.search;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
 import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.document.SetBasedFieldSelector;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.Definitions;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.FileAnalyzer.Genre;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.LineIndex;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.TagFilter;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.util.IOUtils;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.web.Prefix;
@@ -38,9 +41,7 @@ import org.watermint.sourcecolon.org.opensolaris.opengrok.web.SearchHelper;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.web.Util;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
@@ -50,12 +51,21 @@ import java.util.zip.GZIPInputStream;
  */
 public final class Results {
     private static final Logger log = Logger.getLogger(Results.class.getName());
+    /**
+     * The stored fields needed to show a hit, and the charset to read its file
+     * with. The definitions of the file ({@code tags}) and the index of its
+     * lines ({@code lines}) can be large and are only read when the context
+     * of the hit is created.
+     */
+    public static final FieldSelector HIT_FIELDS = new SetBasedFieldSelector(
+            new HashSet<>(Arrays.asList("path", "t", "date", "charset")), new HashSet<>(Arrays.asList("tags", "lines")));
     private Results() {
         // Util class, should not be constructed
     }
 
     /**
-     * Create a has map keyed by the directory of the document found.
+     * Create a has map keyed by the directory of the document found. Only
+     * the {@link #HIT_FIELDS} of the documents are loaded.
      *
      * @param searcher searcher to use.
      * @param hits     hits produced by the given searcher's search
@@ -68,11 +78,26 @@ public final class Results {
     public static Map<String, ArrayList<Document>>
     createMap(IndexSearcher searcher, ScoreDoc[] hits, int startIdx, int stopIdx)
             throws IOException {
+        return createMap(searcher, hits, startIdx, stopIdx, null);
+    }
+
+    /**
+     * Create a has map keyed by the directory of the document found, and
+     * record the document number of each document.
+     *
+     * @param docIds the map to record the document numbers in (may be null)
+     */
+    private static Map<String, ArrayList<Document>>
+    createMap(IndexSearcher searcher, ScoreDoc[] hits, int startIdx, int stopIdx,
+              Map<Document, Integer> docIds) throws IOException {
         LinkedHashMap<String, ArrayList<Document>> dirHash =
                 new LinkedHashMap<>();
         for (int i = startIdx; i < stopIdx; i++) {
             int docId = hits[i].doc;
-            Document doc = searcher.doc(docId);
+            Document doc = searcher.doc(docId, HIT_FIELDS);
+            if (docIds != null) {
+                docIds.put(doc, docId);
+            }
             String rpath = doc.get("path");
             String parent = rpath.substring(0, rpath.lastIndexOf('/'));
             ArrayList<Document> dirDocs = dirHash.get(parent);
@@ -128,6 +153,8 @@ public final class Results {
      * <li>{@link SearchHelper#compressed} (if sourceContext is not {@code null})</li>
      * <li>{@link SearchHelper#sourceRoot} (if sourceContext or historyContext
      * is not {@code null})</li>
+     * <li>{@link SearchHelper#deadline} (ignored if {@code null}): once it
+     * has passed, the remaining hits are printed without context</li>
      * </ul>
      *
      *
@@ -147,8 +174,9 @@ public final class Results {
         String rawPrefixE = ctxE + Prefix.RAW_P;
         File xrefDataDir = new File(sh.dataRoot, Prefix.XREF_P.toString());
 
+        Map<Document, Integer> docIds = new IdentityHashMap<>();
         for (Map.Entry<String, ArrayList<Document>> entry :
-                createMap(sh.searcher, sh.hits, start, end).entrySet()) {
+                createMap(sh.searcher, sh.hits, start, end, docIds).entrySet()) {
             String parent = entry.getKey();
             out.write("<tr class=\"info\"><td colspan=\"2\"><a href=\"");
             out.write(xrefPrefixE);
@@ -167,7 +195,7 @@ public final class Results {
                 out.write("\">");
                 out.write(rpath.substring(rpath.lastIndexOf('/') + 1)); // htmlize ???
                 out.write("</a></td><td>");
-                if (sh.sourceContext != null) {
+                if (sh.sourceContext != null && !isExpired(sh.deadline)) {
                     Genre genre = Genre.get(doc.get("t"));
                     Definitions tags = null;
                     Fieldable tagsField = doc.getFieldable("tags");
@@ -185,15 +213,37 @@ public final class Results {
                         out.write(sh.summerizer.getSummary(htags).toString());
                     } else {
                         Reader r = null;
+                        LineIndex lines = null;
+                        int[] positions = null;
                         if (genre == Genre.PLAIN) {
-                            r = IOUtils.readerWithCharsetDetect(new File(sh.sourceRoot, rpath));
+                            r = IOUtils.readerWithCharset(new File(sh.sourceRoot, rpath), doc.get("charset"));
+                            // a large file: read only the lines which match
+                            Fieldable linesField = doc.getFieldable("lines");
+                            if (linesField != null) {
+                                positions = sh.sourceContext.getPositions(sh.searcher.getIndexReader(), docIds.get(doc));
+                                if (positions != null) {
+                                    lines = LineIndex.deserialize(linesField.getBinaryValue());
+                                }
+                            }
                         }
                         sh.sourceContext.getContext(r, out, xrefPrefix,
-                                morePrefix, rpath, tags, true, null);
+                                morePrefix, rpath, tags, true, null, lines, positions);
                     }
                 }
                 out.write("</td></tr>\n");
             }
         }
     }
+
+    /**
+     * Check if there is no time left to print the context of a hit. If so,
+     * the results are marked as partial.
+     */
+    private static boolean isExpired(Deadline deadline) {
+        if (deadline != null && deadline.isExpired()) {
+            deadline.setMissed();
+            return true;
+        }
+        return false;
+    }
 }
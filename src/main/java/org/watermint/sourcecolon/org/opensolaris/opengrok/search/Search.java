@@ -125,6 +125,9 @@ final class Search {
         } else {
             String root = RuntimeEnvironment.getInstance().getSourceRootPath();
             System.out.println("Printing results 1 - " + nhits + " of " + totalResults + " total matching documents collected.");
+            if (engine.isPartial()) {
+                System.out.println("The search took too long: the results are partial.");
+            }
             for (Hit hit : results) {
                 File file = new File(root, hit.getPath());
                 System.out.println(file.getAbsolutePath() + ":" + hit.getLineno() + " [" + hit.getLine() + "]");
@@ -0,0 +1,119 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+package org.watermint.sourcecolon.org.opensolaris.opengrok.search;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.*;
+
+import java.io.IOException;
+
+/**
+ * Collects the top hits sorted by a string field which come after a given
+ * hit, i.e. the next page of a sorted result. Only the hits of the page are
+ * kept, so a page deep into the result costs no more than the first one.
+ * <p/>
+ * Lucene's {@link IndexSearcher#searchAfter(ScoreDoc, Query, int)} does the
+ * same for results sorted by relevance.
+ */
+public final class SearchAfterCollector extends Collector {
+
+    private final TopFieldCollector collector;
+    private final String field;
+    private final boolean reverse;
+    private final String afterValue;
+    private final int afterDoc;
+    private FieldCache.StringIndex index;
+    private int docBase;
+    private int totalHits;
+
+    /**
+     * Create a new collector.
+     *
+     * @param sort    the sort order, which has to consist of a single
+     *                {@link SortField#STRING} field
+     * @param after   the last hit of the previous page. Its only field has
+     *                to be the value of the sort field.
+     * @param numHits the number of hits to collect
+     * @throws IOException if the collector cannot be created
+     */
+    public SearchAfterCollector(Sort sort, FieldDoc after, int numHits) throws IOException {
+        SortField[] fields = sort.getSort();
+        if (fields.length != 1 || fields[0].getType() != SortField.STRING) {
+            throw new IllegalArgumentException("Only a single string sort field is supported");
+        }
+        field = fields[0].getField();
+        reverse = fields[0].getReverse();
+        afterValue = (String) after.fields[0];
+        afterDoc = after.doc;
+        collector = TopFieldCollector.create(sort, numHits, true, false, false, true);
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        collector.setScorer(scorer);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        totalHits++;
+        int c = compare(index.lookup[index.order[doc]], afterValue);
+        if (reverse) {
+            c = -c;
+        }
+        // equal values are sorted by document number
+        if (c > 0 || (c == 0 && docBase + doc > afterDoc)) {
+            collector.collect(doc);
+        }
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        // the same cache entry as used for sorting
+        index = FieldCache.DEFAULT.getStringIndex(reader, field);
+        this.docBase = docBase;
+        collector.setNextReader(reader, docBase);
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return false;
+    }
+
+    /**
+     * Get the hits collected.
+     *
+     * @return the hits after the given one, and the total number of hits
+     *         (including the ones before the given hit)
+     */
+    public TopDocs topDocs() {
+        TopDocs docs = collector.topDocs();
+        return new TopDocs(totalHits, docs.scoreDocs, docs.getMaxScore());
+    }
+
+    private static int compare(String a, String b) {
+        if (a == null) {
+            return b == null ? 0 : -1;
+        }
+        return b == null ? 1 : a.compareTo(b);
+    }
+}
@@ -27,17 +27,15 @@ package org.watermint.sourcecolon.org.opensolaris.opengrok.search;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Fieldable;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopScoreDocCollector;
-import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Version;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.CompatibleAnalyser;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.Definitions;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.FileAnalyzer.Genre;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.LineIndex;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.TagFilter;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.configuration.Project;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.configuration.RuntimeEnvironment;
@@ -47,6 +45,8 @@ import org.watermint.sourcecolon.org.opensolaris.opengrok.util.IOUtils;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -121,6 +121,8 @@ public class SearchEngine {
     private TopScoreDocCollector collector;
     private IndexSearcher searcher;
     private boolean allCollected;
+    private Deadline deadline;
+    private boolean partial;
 
     /**
      * Creates a new instance of SearchEngine
@@ -157,23 +159,22 @@ public class SearchEngine {
 
     /**
      * @param paging whether to use paging (if yes, first X pages will load faster)
-     * @param root   which db to search
+     * @param root   the data root holding the db to search
      * @throws IOException
      */
     private void searchSingleDatabase(File root, boolean paging) throws IOException {
-        IndexReader ireader = IndexReader.open(FSDirectory.open(root));
-        searcher = new IndexSearcher(ireader);
+        searcher = SearcherPool.getInstance().acquire(root, Collections.<String>emptyList());
         collector = TopScoreDocCollector.create(hitsPerPage * cachePages, docsScoredInOrder);
-        searcher.search(query, collector);
+        deadline.search(searcher, query, collector);
         totalHits = collector.getTotalHits();
         if (!paging) {
             collector = TopScoreDocCollector.create(totalHits, docsScoredInOrder);
-            searcher.search(query, collector);
+            deadline.search(searcher, query, collector);
         }
         hits = collector.topDocs().scoreDocs;
         for (ScoreDoc hit : hits) {
             int docId = hit.doc;
-            Document d = searcher.doc(docId);
+            Document d = searcher.doc(docId, Results.HIT_FIELDS);
             docs.add(d);
         }
     }
@@ -184,24 +185,22 @@ public class SearchEngine {
      * @throws IOException
      */
     private void searchMultiDatabase(List<Project> root, boolean paging) throws IOException {
-        IndexReader[] searchables = new IndexReader[root.size()];
-        File droot = new File(RuntimeEnvironment.getInstance().getDataRootFile(), "index");
-        int ii = 0;
+        List<String> projects = new ArrayList<>(root.size());
         for (Project project : root) {
-            searchables[ii++] = (IndexReader.open(FSDirectory.open(new File(droot, project.getPath()))));
+            projects.add(project.getPath());
         }
-        searcher = new IndexSearcher(new MultiReader(searchables));
+        searcher = SearcherPool.getInstance().acquire(RuntimeEnvironment.getInstance().getDataRootFile(), projects);
         collector = TopScoreDocCollector.create(hitsPerPage * cachePages, docsScoredInOrder);
-        searcher.search(query, collector);
+        deadline.search(searcher, query, collector);
         totalHits = collector.getTotalHits();
         if (!paging) {
             collector = TopScoreDocCollector.create(totalHits, docsScoredInOrder);
-            searcher.search(query, collector);
+            deadline.search(searcher, query, collector);
         }
         hits = collector.topDocs().scoreDocs;
         for (ScoreDoc hit : hits) {
             int docId = hit.doc;
-            Document d = searcher.doc(docId);
+            Document d = searcher.doc(docId, Results.HIT_FIELDS);
             docs.add(d);
         }
     }
@@ -210,6 +209,26 @@ public class SearchEngine {
         return query.toString();
     }
 
+    /**
+     * Release the searcher used by the last search. The results of the last
+     * search cannot be retrieved afterwards.
+     */
+    public void destroy() {
+        SearcherPool.getInstance().release(searcher);
+        searcher = null;
+    }
+
+    /**
+     * Check if the results are incomplete, because the search or the
+     * creation of the context of the hits took longer than
+     * {@link RuntimeEnvironment#getSearchTimeout()}.
+     *
+     * @return true if the results are partial
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
     /**
      * Execute a search. Before calling this function, you must set the
      * appropriate seach critera with the set-functions.
@@ -221,6 +240,9 @@ public class SearchEngine {
         source = RuntimeEnvironment.getInstance().getSourceRootPath();
         data = RuntimeEnvironment.getInstance().getDataRootPath();
         docs.clear();
+        allCollected = false;
+        destroy();
+        deadline = new Deadline(RuntimeEnvironment.getInstance().getSearchTimeout());
 
         QueryBuilder queryBuilder = createQueryBuilder();
 
@@ -228,13 +250,11 @@ public class SearchEngine {
             query = queryBuilder.build();
             if (query != null) {
                 RuntimeEnvironment env = RuntimeEnvironment.getInstance();
-                File root = new File(env.getDataRootFile(), "index");
+                File root = env.getDataRootFile();
 
                 if (env.hasProjects()) {
                     // search all projects
-                    //TODO support paging per project (in search.java)
-                    //TODO optimize if only one project by falling back to SingleDatabase ?
-                    searchMultiDatabase(env.getProjects(), false);
+                    searchMultiDatabase(env.getProjects(), true);
                 } else {
                     // search the index database
                     searchSingleDatabase(root, true);
@@ -257,15 +277,19 @@ public class SearchEngine {
                 log.log(Level.WARNING, "An error occured while creating summary", e);
             }
         }
+        partial = deadline.isMissed();
         return hits.length;
     }
 
     /**
      * get results , if no search was started before, no results are returned
-     * this method will requery if end end is more than first query from search,
-     * hence performance hit applies, if you want results in later pages than number of cachePages
+     * this method will search for the missing hits if end is more than the
+     * hits collected so far, continuing after the last hit collected
      * also end has to be bigger than start !
      *
+     * the search of the missing hits and the context of the hits have the
+     * same time budget as {@link #search()}, see {@link #isPartial()}
+     *
      * @param start start of the hit list
      * @param end   end of the hit list
      * @param ret   list of results from start to end or null/empty if no search was started
@@ -279,29 +303,35 @@ public class SearchEngine {
         }
 
         ret.clear();
+        deadline = new Deadline(RuntimeEnvironment.getInstance().getSearchTimeout());
 
-        //TODO check if below fits for if end=old hits.length, or it should include it
-        if (end > hits.length & !allCollected) {
-            //do the requery, we want more than 5 pages
-            collector = TopScoreDocCollector.create(totalHits, docsScoredInOrder);
+        if (end > hits.length && !allCollected) {
+            // we want more than the first pages: collect the missing hits
+            // only, instead of all hits from the start again
+            ScoreDoc after = hits.length == 0 ? null : hits[hits.length - 1];
+            ScoreDoc[] more = new ScoreDoc[0];
             try {
-                searcher.search(query, collector);
+                TopScoreDocCollector c = TopScoreDocCollector.create(end - hits.length, after, docsScoredInOrder);
+                deadline.search(searcher, query, c);
+                more = c.topDocs().scoreDocs;
             } catch (Exception e) { // this exception should never be hit, since search() will hit this before
                 log.log(Level.WARNING, SEARCH_EXCEPTION_MSG, e);
             }
-            hits = collector.topDocs().scoreDocs;
+            int collected = hits.length;
+            hits = Arrays.copyOf(hits, collected + more.length);
+            System.arraycopy(more, 0, hits, collected, more.length);
             Document d = null;
-            for (int i = start; i < hits.length; i++) {
-                int docId = hits[i].doc;
+            for (ScoreDoc hit : more) {
                 try {
-                    d = searcher.doc(docId);
+                    d = searcher.doc(hit.doc, Results.HIT_FIELDS);
                 } catch (Exception e) {
                     log.log(Level.SEVERE, SEARCH_EXCEPTION_MSG, e);
                 }
                 docs.add(d);
             }
-            allCollected = true;
+            allCollected = hits.length >= totalHits;
         }
+        end = Math.min(end, docs.size());
 
         //TODO generation of ret(results) could be cashed and consumers of engine would just print them in whatever form they need, this way we could get rid of docs
         // the only problem is that count of docs is usually smaller than number of results
@@ -320,12 +350,25 @@ public class SearchEngine {
                 }
                 int nhits = docs.size();
 
-                if (sourceContext != null) {
+                if (sourceContext != null && deadline.isExpired()) {
+                    // out of time: the remaining hits are listed without context
+                    deadline.setMissed();
+                } else if (sourceContext != null) {
                     try {
                         if (Genre.PLAIN == genre && (source != null)) {
-                            hasContext = sourceContext.getContext(IOUtils.readerWithCharsetDetect(source +
-                                    filename), null, null, null, filename,
-                                    tags, nhits > 100, ret);
+                            LineIndex lines = null;
+                            int[] positions = null;
+                            Fieldable linesField = doc.getFieldable("lines");
+                            if (linesField != null) {
+                                // a large file: read only the lines which match
+                                positions = sourceContext.getPositions(searcher.getIndexReader(), hits[ii].doc);
+                                if (positions != null) {
+                                    lines = LineIndex.deserialize(linesField.getBinaryValue());
+                                }
+                            }
+                            hasContext = sourceContext.getContext(IOUtils.readerWithCharset(new File(source +
+                                    filename), doc.get("charset")), null, null, null, filename,
+                                    tags, nhits > 100, ret, lines, positions);
                         } else if (Genre.XREFABLE == genre && data != null && summarizer != null) {
                             int l = 0;
                             Reader r = null;
@@ -368,7 +411,7 @@ public class SearchEngine {
                 log.log(Level.WARNING, SEARCH_EXCEPTION_MSG, e);
             }
         }
-
+        partial |= deadline.isMissed();
     }
 
     /**
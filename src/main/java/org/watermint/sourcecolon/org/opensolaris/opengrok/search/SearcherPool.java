@@ -0,0 +1,368 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+package org.watermint.sourcecolon.org.opensolaris.opengrok.search;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.FSDirectory;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.configuration.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Process wide pool of open index searchers, one per index database. Opening
+ * an index reader is expensive, so the readers are kept open and shared by
+ * all searches. When the indexer signals a new index (by touching the
+ * {@code timestamp} file in the data root), the readers are reopened the next
+ * time they are acquired. A reader which is replaced is closed once the last
+ * search using it has released it.
+ * <p/>
+ * Every searcher returned by {@link #acquire(File, Collection)} must be given
+ * back with {@link #release(IndexSearcher)}.
+ * <p/>
+ * The pool also searches the projects of a multi-project searcher in
+ * parallel, see {@link #search(IndexSearcher, Query, int, Sort, Deadline)}.
+ */
+public final class SearcherPool {
+
+    private static final Logger log = Logger.getLogger(SearcherPool.class.getName());
+    private static final SearcherPool instance = new SearcherPool();
+
+    /**
+     * A searcher manager of an index database, and the time stamp of the
+     * index when it was refreshed last.
+     */
+    private static final class Database {
+
+        final SearcherManager manager;
+        long timestamp;
+
+        Database(SearcherManager manager, long timestamp) {
+            this.manager = manager;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * The searchers of the index databases behind a searcher handed out.
+     */
+    private static final class Lease {
+
+        final List<SearcherManager> managers = new ArrayList<>();
+        final List<IndexSearcher> searchers = new ArrayList<>();
+    }
+
+    private final Map<File, Database> databases = new HashMap<>();
+    private final Map<IndexSearcher, Lease> leases = new IdentityHashMap<>();
+    private ExecutorService executor;
+    private int executorThreads;
+
+    private SearcherPool() {
+    }
+
+    /**
+     * Get the pool of this process.
+     *
+     * @return the searcher pool
+     */
+    public static SearcherPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Acquire a searcher for the index databases of some projects.
+     *
+     * @param dataRoot the data root holding the index databases
+     * @param projects the paths of the projects to search. If empty, the index
+     *                 database of a setup without projects is used.
+     * @return a searcher, which has to be released
+     * @throws IOException if an index database cannot be opened
+     */
+    public IndexSearcher acquire(File dataRoot, Collection<String> projects) throws IOException {
+        File indexDir = new File(dataRoot, "index");
+        long timestamp = new File(dataRoot, "timestamp").lastModified();
+        Lease lease = new Lease();
+        try {
+            if (projects.isEmpty()) {
+                acquire(lease, indexDir, timestamp);
+            } else {
+                for (String project : projects) {
+                    acquire(lease, new File(indexDir, project), timestamp);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            release(lease);
+            throw e;
+        }
+
+        // a searcher of its own, since the searchers of the managers are
+        // shared by concurrent searches, but every lease is released
+        IndexSearcher searcher;
+        if (lease.searchers.size() == 1) {
+            searcher = new IndexSearcher(lease.searchers.get(0).getIndexReader());
+        } else {
+            IndexReader[] readers = new IndexReader[lease.searchers.size()];
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = lease.searchers.get(i).getIndexReader();
+            }
+            // the sub readers belong to the pool
+            searcher = new IndexSearcher(new MultiReader(readers, false));
+        }
+        synchronized (leases) {
+            leases.put(searcher, lease);
+        }
+        return searcher;
+    }
+
+    /**
+     * Release a searcher acquired from this pool. Readers which have been
+     * replaced by newer ones are closed if nobody else uses them.
+     *
+     * @param searcher the searcher to release (may be null)
+     */
+    public void release(IndexSearcher searcher) {
+        if (searcher == null) {
+            return;
+        }
+        Lease lease;
+        synchronized (leases) {
+            lease = leases.remove(searcher);
+        }
+        if (lease == null) {
+            log.log(Level.WARNING, "Released a searcher which was not acquired from the pool");
+            return;
+        }
+        release(lease);
+    }
+
+    /**
+     * Get the generation of the index behind a searcher acquired from this
+     * pool. The generation changes whenever one of the index readers of the
+     * searcher is replaced by a newer one, and document numbers are only
+     * valid within a generation.
+     *
+     * @param searcher a searcher acquired from this pool
+     * @return the generation, or null if the searcher is not from this pool
+     */
+    public String getGeneration(IndexSearcher searcher) {
+        Lease lease;
+        synchronized (leases) {
+            lease = leases.get(searcher);
+        }
+        if (lease == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (IndexSearcher s : lease.searchers) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(s.getIndexReader().getVersion());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the top hits of a searcher acquired from this pool. If the searcher
+     * covers several projects and {@link RuntimeEnvironment#getSearchThreads()}
+     * allows it, the projects are searched in parallel and their top hits are
+     * merged. A search which isn't done at the deadline returns the hits
+     * found so far, and the deadline is marked as missed.
+     *
+     * @param searcher a searcher acquired from this pool
+     * @param query    the query to search
+     * @param n        the number of hits wanted
+     * @param sort     the sort order of the hits
+     * @param deadline the deadline of the search
+     * @return the top hits
+     * @throws IOException if the search fails
+     */
+    public TopDocs search(IndexSearcher searcher, Query query, final int n, final Sort sort,
+                          final Deadline deadline) throws IOException {
+        Lease lease;
+        synchronized (leases) {
+            lease = leases.get(searcher);
+        }
+        // weighted on all projects, so that the scores are the same as if
+        // they were searched together
+        final Weight weight = searcher.createNormalizedWeight(query);
+        ExecutorService exec = getExecutor();
+        if (lease == null || lease.searchers.size() < 2 || exec == null) {
+            return search(searcher, weight, n, sort, deadline);
+        }
+
+        List<Future<TopFieldDocs>> futures = new ArrayList<>(lease.searchers.size());
+        for (final IndexSearcher s : lease.searchers) {
+            futures.add(exec.submit(new Callable<TopFieldDocs>() {
+                @Override
+                public TopFieldDocs call() throws IOException {
+                    return search(s, weight, n, sort, deadline);
+                }
+            }));
+        }
+
+        TopDocs[] results = new TopDocs[futures.size()];
+        int docBase = 0;
+        for (int i = 0; i < results.length; i++) {
+            Future<TopFieldDocs> future = futures.get(i);
+            try {
+                results[i] = get(future, sort, deadline);
+            } catch (InterruptedException e) {
+                // never interrupt a search, an interrupt closes the files
+                // of the index reader shared by all searches
+                for (Future<TopFieldDocs> f : futures) {
+                    f.cancel(false);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while searching");
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to search " + lease.searchers.get(i).getIndexReader().directory(),
+                        e.getCause());
+            }
+            // document numbers of the multi reader
+            for (ScoreDoc hit : results[i].scoreDocs) {
+                hit.doc += docBase;
+            }
+            docBase += lease.searchers.get(i).getIndexReader().maxDoc();
+        }
+        return TopDocs.merge(sort, n, results);
+    }
+
+    /**
+     * Wait for the search of a project. A search which has started stops
+     * at the deadline by itself, with the hits found so far, so it is waited
+     * for. A search which hasn't started at the deadline is cancelled.
+     */
+    private static TopFieldDocs get(Future<TopFieldDocs> future, Sort sort, Deadline deadline)
+            throws InterruptedException, ExecutionException {
+        if (deadline.isLimited()) {
+            try {
+                return future.get(deadline.getTimeLeft(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (future.cancel(false)) {
+                    deadline.setMissed();
+                    log.log(Level.WARNING, "Search of a project did not start before the deadline, returning partial results");
+                    return new TopFieldDocs(0, new ScoreDoc[0], sort.getSort(), Float.NaN);
+                }
+            }
+        }
+        return future.get();
+    }
+
+    private static TopFieldDocs search(IndexSearcher searcher, Weight weight, int n, Sort sort,
+                                       Deadline deadline) throws IOException {
+        TopFieldCollector collector = TopFieldCollector.create(sort, n, true, false, false,
+                !weight.scoresDocsOutOfOrder());
+        if (!deadline.search(searcher, weight, collector)) {
+            log.log(Level.WARNING, "Search has been stopped at the deadline, returning partial results");
+        }
+        return (TopFieldDocs) collector.topDocs();
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        int threads = RuntimeEnvironment.getInstance().getSearchThreads();
+        if (threads != executorThreads) {
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+            if (threads > 0) {
+                executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "search");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            }
+            executorThreads = threads;
+        }
+        return executor;
+    }
+
+    /**
+     * Close all index readers, for example when the web application is
+     * stopped. Searchers which are still in use keep their readers open until
+     * they are released.
+     */
+    public void close() {
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+                executorThreads = 0;
+            }
+        }
+        List<Database> closing;
+        synchronized (databases) {
+            closing = new ArrayList<>(databases.values());
+            databases.clear();
+        }
+        for (Database db : closing) {
+            try {
+                db.manager.close();
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Failed to close index reader", e);
+            }
+        }
+    }
+
+    private void acquire(Lease lease, File indexDir, long timestamp) throws IOException {
+        Database db;
+        boolean refresh = false;
+        synchronized (databases) {
+            db = databases.get(indexDir);
+            if (db == null) {
+                db = new Database(new SearcherManager(FSDirectory.open(indexDir), null), timestamp);
+                databases.put(indexDir, db);
+            } else if (db.timestamp != timestamp) {
+                db.timestamp = timestamp;
+                refresh = true;
+            }
+        }
+        if (refresh) {
+            db.manager.maybeRefresh();
+        }
+        IndexSearcher searcher = db.manager.acquire();
+        lease.managers.add(db.manager);
+        lease.searchers.add(searcher);
+    }
+
+    private static void release(Lease lease) {
+        for (int i = 0; i < lease.searchers.size(); i++) {
+            try {
+                lease.managers.get(i).release(lease.searchers.get(i));
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Failed to release index reader", e);
+            }
+        }
+    }
+}
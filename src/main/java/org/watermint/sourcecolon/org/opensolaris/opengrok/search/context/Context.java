@@ -30,8 +30,12 @@
  */
 package org.watermint.sourcecolon.org.opensolaris.opengrok.search.context;
 
-import org.apache.lucene.search.Query;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermPositions;
+import org.apache.lucene.search.*;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.Definitions;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.LineIndex;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.configuration.RuntimeEnvironment;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.search.Hit;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.util.IOUtils;
@@ -40,10 +44,7 @@ import org.watermint.sourcecolon.org.opensolaris.opengrok.web.Util;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -55,6 +56,15 @@ public class Context {
     private char[] buffer;
     private PlainLineTokenizer tokens;
     private String queryAsURI;
+    /**
+     * Maximum number of terms a prefix or wildcard query may be expanded to
+     * for finding the positions of the matches.
+     */
+    private static final int MAX_EXPANDED_TERMS = 1024;
+    private List<Term> positionTerms;
+    private List<Query> positionPatterns;
+    private IndexReader expandedReader;
+    private List<Term> expandedTerms;
 
     public LineMatcher[] getLineMatchers() {
         return lineMatchers;
@@ -87,9 +97,113 @@ public class Context {
             buildQueryAsURI(queryStrings);
             buffer = new char[MAX_FILE_READ];
             tokens = new PlainLineTokenizer((Reader) null);
+            getPositionTerms(qm.getSources());
         }
     }
 
+    /**
+     * Collect the terms whose positions tell which lines match. This only
+     * works if all matchers are for the {@code full} field, since the
+     * positions of the other fields don't map to the lines of the file.
+     */
+    private void getPositionTerms(List<Query> sources) {
+        List<Term> terms = new ArrayList<>();
+        List<Query> patterns = new ArrayList<>();
+        for (Query q : sources) {
+            Term term;
+            if (q instanceof PhraseQuery) {
+                Term[] phrase = ((PhraseQuery) q).getTerms();
+                terms.addAll(Arrays.asList(phrase));
+                term = phrase[0];
+            } else if (q instanceof TermQuery) {
+                term = ((TermQuery) q).getTerm();
+                terms.add(term);
+            } else if (q instanceof PrefixQuery) {
+                term = ((PrefixQuery) q).getPrefix();
+                patterns.add(q);
+            } else {
+                term = ((WildcardQuery) q).getTerm();
+                patterns.add(q);
+            }
+            if (!"full".equals(term.field())) {
+                return;
+            }
+        }
+        positionTerms = terms;
+        positionPatterns = patterns;
+    }
+
+    /**
+     * Get the positions of the terms of the query in the {@code full} field
+     * of a document. With the {@link LineIndex} of the file, they tell which
+     * lines of the file may match.
+     *
+     * @param reader the reader of the index database searched
+     * @param doc    the document number of the hit
+     * @return the sorted positions, or null if the matching lines cannot be
+     *         found from the positions of the terms
+     * @throws IOException if the positions cannot be read
+     */
+    public int[] getPositions(IndexReader reader, int doc) throws IOException {
+        if (positionTerms == null) {
+            return null;
+        }
+        if (reader != expandedReader) {
+            expandedReader = reader;
+            expandedTerms = expandTerms(reader);
+        }
+        if (expandedTerms == null) {
+            return null;
+        }
+        int[] positions = new int[16];
+        int count = 0;
+        for (Term term : expandedTerms) {
+            TermPositions tp = reader.termPositions(term);
+            try {
+                if (tp.skipTo(doc) && tp.doc() == doc) {
+                    int freq = tp.freq();
+                    if (count + freq > positions.length) {
+                        positions = Arrays.copyOf(positions, Math.max(2 * positions.length, count + freq));
+                    }
+                    for (int i = 0; i < freq; i++) {
+                        positions[count++] = tp.nextPosition();
+                    }
+                }
+            } finally {
+                tp.close();
+            }
+        }
+        positions = Arrays.copyOf(positions, count);
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    /**
+     * Get the terms of the query, with the prefix and wildcard queries
+     * expanded to the terms of the index database they match.
+     *
+     * @return the terms, or null if there are too many of them
+     */
+    private List<Term> expandTerms(IndexReader reader) throws IOException {
+        List<Term> terms = new ArrayList<>(positionTerms);
+        for (Query q : positionPatterns) {
+            FilteredTermEnum e = q instanceof PrefixQuery
+                    ? new PrefixTermEnum(reader, ((PrefixQuery) q).getPrefix())
+                    : new WildcardTermEnum(reader, ((WildcardQuery) q).getTerm());
+            try {
+                for (Term t = e.term(); t != null; t = e.next() ? e.term() : null) {
+                    if (terms.size() >= MAX_EXPANDED_TERMS) {
+                        return null;
+                    }
+                    terms.add(t);
+                }
+            } finally {
+                e.close();
+            }
+        }
+        return terms;
+    }
+
     public boolean isEmpty() {
         return lineMatchers == null;
     }
@@ -136,6 +250,30 @@ public class Context {
     public boolean getContext(Reader in, Writer out, String urlPrefix,
                               String morePrefix, String path, Definitions tags,
                               boolean limit, List<Hit> hits) {
+        return getContext(in, out, urlPrefix, morePrefix, path, tags, limit, hits, null, null);
+    }
+
+    /**
+     * Get the context of a hit. If the line index of the file and the
+     * positions of the matches are given, only the blocks of lines which
+     * contain the matches are read.
+     * Closes the given <var>in</var> reader on return.
+     *
+     * @param in         File to be matched
+     * @param out        to write the context
+     * @param morePrefix to link to more... page
+     * @param path       path of the file
+     * @param tags       format to highlight defs.
+     * @param limit      should the number of matching lines be limited?
+     * @param lines      the line index of the file (may be null)
+     * @param positions  the positions of the matches as returned by
+     *                   {@link #getPositions(IndexReader, int)} (may be null)
+     * @return Did it get any matching context?
+     */
+    public boolean getContext(Reader in, Writer out, String urlPrefix,
+                              String morePrefix, String path, Definitions tags,
+                              boolean limit, List<Hit> hits,
+                              LineIndex lines, int[] positions) {
         alt = !alt;
         if (lineMatchers == null) {
             IOUtils.close(in);
@@ -206,6 +344,11 @@ public class Context {
             lim = false;
         }
 
+        if (lines != null && positions != null) {
+            return getBlockContext(in, out, urlPrefixE + pathE + "#", morePrefix,
+                    path, matchingTags, lim, hits, lines, positions);
+        }
+
         if (lim) {
             try {
                 charsRead = in.read(buffer);
@@ -243,28 +386,11 @@ public class Context {
         }
 
         try {
-            String token;
-            int matchState = LineMatcher.NOT_MATCHED;
-            int matchedLines = 0;
-            while ((token = tokens.yylex()) != null && (!lim || matchedLines < 10)) {
-                for (LineMatcher aM : lineMatchers) {
-                    matchState = aM.match(token);
-                    if (matchState == LineMatcher.MATCHED) {
-                        tokens.printContext();
-                        matchedLines++;
-                        //out.write("<br> <i>Matched " + token + " maxlines = " + matchedLines + "</i><br>");
-                        break;
-                    } else if (matchState == LineMatcher.WAIT) {
-                        tokens.holdOn();
-                    } else {
-                        tokens.neverMind();
-                    }
-                }
-            }
+            int matchedLines = matchLines(lim ? 10 : Integer.MAX_VALUE);
             anything = matchedLines > 0;
             tokens.dumpRest();
             if (lim && (truncated || matchedLines == 10) && out != null) {
-                out.write("<a href=\"" + Util.URIEncodePath(morePrefix) + pathE + "?" + queryAsURI + "\"><i class=\"icon-hand-right\"></i> more...</a>");
+                writeMore(out, morePrefix, pathE);
             }
         } catch (IOException e) {
             log.log(Level.WARNING, "Could not get context for " + path, e);
@@ -281,4 +407,159 @@ public class Context {
         }
         return anything;
     }
+
+    /**
+     * Get the context of a hit from the blocks of lines of the file which
+     * contain the matches.
+     */
+    private boolean getBlockContext(Reader in, Writer out, String url,
+                                    String morePrefix, String path,
+                                    TreeMap<Integer, String[]> matchingTags,
+                                    boolean lim, List<Hit> hits,
+                                    LineIndex lines, int[] positions) {
+        if (matchingTags == null) {
+            matchingTags = new TreeMap<>();
+        }
+        // the blocks containing the matches, in order
+        int[] blocks = new int[positions.length];
+        int count = 0;
+        for (int position : positions) {
+            int block = lines.findBlock(position);
+            if (count == 0 || blocks[count - 1] != block) {
+                blocks[count++] = block;
+            }
+        }
+        int matchedLines = 0;
+        boolean truncated = false;
+        try {
+            int offset = 0;
+            int i = 0;
+            while (i < count && (!lim || matchedLines < 10)) {
+                int first = blocks[i];
+                int last = first;
+                // read adjacent blocks at once, as far as they fit the buffer
+                int start = lines.getOffset(first);
+                while (++i < count && blocks[i] == last + 1
+                        && lines.getEnd(last + 1) >= 0
+                        && lines.getEnd(last + 1) - start <= buffer.length) {
+                    last++;
+                }
+                int end = lines.getEnd(last);
+                skip(in, start - offset);
+                int charsRead = read(in, end < 0 ? buffer.length : Math.min(end - start, buffer.length));
+                offset = start + charsRead;
+                if (charsRead == 0) {
+                    break;
+                }
+                if (charsRead == buffer.length && end != start + charsRead) {
+                    // a block with very long lines: truncate it to the last
+                    // line read, like the start of a file read at once
+                    truncated = true;
+                    for (int j = charsRead - 1; j > charsRead - 100; j--) {
+                        if (buffer[j] == '\n') {
+                            charsRead = j;
+                            break;
+                        }
+                    }
+                }
+                SortedMap<Integer, String[]> blockTags = last + 1 < lines.size()
+                        ? matchingTags.subMap(lines.getLine(first), lines.getLine(last + 1))
+                        : matchingTags.tailMap(lines.getLine(first));
+                tokens.reInit(buffer, charsRead, out, url, new TreeMap<>(blockTags), lines.getLine(first));
+                blockTags.clear();
+                if (hits != null) {
+                    tokens.setAlt(alt);
+                    tokens.setHitList(hits);
+                    tokens.setFilename(path);
+                }
+                matchedLines += matchLines(lim ? 10 - matchedLines : Integer.MAX_VALUE);
+                tokens.dumpRest();
+            }
+            if (!matchingTags.isEmpty()) {
+                // the definitions in the lines which have not been read
+                tokens.reInit(buffer, 0, out, url, matchingTags);
+                if (hits != null) {
+                    tokens.setAlt(alt);
+                    tokens.setHitList(hits);
+                    tokens.setFilename(path);
+                }
+                tokens.dumpRest();
+            }
+            if (lim && (truncated || matchedLines == 10) && out != null) {
+                writeMore(out, morePrefix, Util.URIEncodePath(path));
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not get context for " + path, e);
+        } finally {
+            IOUtils.close(in);
+
+            if (out != null) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Failed to flush stream: ", e);
+                }
+            }
+        }
+        return matchedLines > 0;
+    }
+
+    /**
+     * Print the lines read by the tokenizer which match.
+     *
+     * @param maxLines the maximum number of lines to print
+     * @return the number of lines printed
+     */
+    private int matchLines(int maxLines) throws IOException {
+        String token;
+        int matchState;
+        int matchedLines = 0;
+        while ((token = tokens.yylex()) != null && matchedLines < maxLines) {
+            for (LineMatcher aM : lineMatchers) {
+                matchState = aM.match(token);
+                if (matchState == LineMatcher.MATCHED) {
+                    tokens.printContext();
+                    matchedLines++;
+                    //out.write("<br> <i>Matched " + token + " maxlines = " + matchedLines + "</i><br>");
+                    break;
+                } else if (matchState == LineMatcher.WAIT) {
+                    tokens.holdOn();
+                } else {
+                    tokens.neverMind();
+                }
+            }
+        }
+        return matchedLines;
+    }
+
+    private void writeMore(Writer out, String morePrefix, String pathE) throws IOException {
+        out.write("<a href=\"" + Util.URIEncodePath(morePrefix) + pathE + "?" + queryAsURI + "\"><i class=\"icon-hand-right\"></i> more...</a>");
+    }
+
+    private static void skip(Reader in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                break;
+            }
+            n -= skipped;
+        }
+    }
+
+    /**
+     * Read up to {@code length} characters into the buffer.
+     *
+     * @return the number of characters read, less only at the end of the file
+     */
+    private int read(Reader in, int length) throws IOException {
+        int charsRead = 0;
+        while (charsRead < length) {
+            int n = in.read(buffer, charsRead, length - charsRead);
+            if (n < 0) {
+                break;
+            }
+            charsRead += n;
+        }
+        return charsRead;
+    }
 }
@@ -39,6 +39,7 @@ public final class QueryMatchers {
     private Set<String> caseSensitiveTerms;
     private Set<String> caseInsensitiveTerms;
     private List<LineMatcher> matchers;
+    private List<Query> sources;
     private Map<String, Boolean> fields;
 
     /**
@@ -55,6 +56,7 @@ public final class QueryMatchers {
         caseSensitiveTerms = new HashSet<>();
         caseInsensitiveTerms = new HashSet<>();
         matchers = new ArrayList<>();
+        sources = new ArrayList<>();
         this.fields = fields;
         getTerms(query);
         if (!caseSensitiveTerms.isEmpty()) {
@@ -70,6 +72,17 @@ public final class QueryMatchers {
         return (m);
     }
 
+    /**
+     * Get the queries which the matchers returned by the last call to
+     * {@link #getMatchers(Query, Map)} were created for.
+     *
+     * @return list of {@link TermQuery}, {@link PhraseQuery},
+     *         {@link PrefixQuery} and {@link WildcardQuery} instances
+     */
+    public List<Query> getSources() {
+        return sources;
+    }
+
     private void getTerms(Query query) {
         if (query instanceof BooleanQuery) {
             getBooleans((BooleanQuery) query);
@@ -102,6 +115,7 @@ public final class QueryMatchers {
                 termsArray[i] = queryTerms[i].text();
             }
             matchers.add(new PhraseMatcher(termsArray, caseInsensitive));
+            sources.add(query);
         }
     }
 
@@ -114,6 +128,7 @@ public final class QueryMatchers {
             } else {
                 caseSensitiveTerms.add(text);
             }
+            sources.add(query);
         }
     }
 
@@ -122,6 +137,7 @@ public final class QueryMatchers {
         if (useTerm(term)) {
             matchers.add(
                     new WildCardMatcher(term.text(), isCaseInsensitive(term)));
+            sources.add(query);
         }
     }
 
@@ -130,6 +146,7 @@ public final class QueryMatchers {
         if (useTerm(term)) {
             matchers.add(
                     new PrefixMatcher(term.text(), isCaseInsensitive(term)));
+            sources.add(query);
         }
     }
 
@@ -30,6 +30,8 @@ import com.ibm.icu.text.CharsetMatch;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,6 +44,11 @@ import java.util.logging.Logger;
 public final class IOUtils {
 
     private static final Logger log = Logger.getLogger(IOUtils.class.getName());
+    /**
+     * The number of bytes read to detect a charset, as many as the ICU
+     * charset detector reads from a stream.
+     */
+    private static final int SNIFF_SIZE = 8000;
 
     private IOUtils() {
         // singleton
@@ -56,20 +63,116 @@ public final class IOUtils {
     }
 
     public static Reader readerWithCharsetDetect(InputStream is) {
-        CharsetDetector detector = new CharsetDetector();
+        return new InputStreamReader(is, Charset.forName(detectCharset(is)));
+    }
+
+    /**
+     * Create a reader of a file with the charset detected when it was
+     * indexed, and only detect it again if that is unknown.
+     *
+     * @param f       the file to read
+     * @param charset the name of the charset stored with the document of the
+     *                file, or {@code null}
+     * @return a reader of the file
+     * @throws FileNotFoundException if the file cannot be opened
+     */
+    public static Reader readerWithCharset(File f, String charset) throws FileNotFoundException {
+        if (charset != null) {
+            try {
+                return new InputStreamReader(new FileInputStream(f), Charset.forName(charset));
+            } catch (IllegalArgumentException e) {
+                log.log(Level.FINE, "Unsupported charset " + charset + ", detecting it again", e);
+            }
+        }
+        return readerWithCharsetDetect(f);
+    }
+
+    /**
+     * Detect the charset of a stream from its first bytes, and reset the
+     * stream to where it was. ASCII and valid UTF-8 are checked for first,
+     * and read as UTF-8. Other bytes (or null bytes, which are probably
+     * UTF-16) are left to the ICU charset detector.
+     *
+     * @param is the stream, which has to support mark and reset
+     * @return the name of the charset
+     */
+    public static String detectCharset(InputStream is) {
+        byte[] buf = new byte[SNIFF_SIZE];
+        int len = 0;
+        is.mark(SNIFF_SIZE);
+        try {
+            int n;
+            while (len < buf.length && (n = is.read(buf, len, buf.length - len)) > 0) {
+                len += n;
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Failed to read the stream to detect its charset", e);
+        }
         try {
-            CharsetMatch match = detector.setText(is).detect();
             is.reset();
-            return new InputStreamReader(is, match.getName());
         } catch (IOException e) {
-            e.printStackTrace();
-            try {
-                is.reset();
-            } catch (IOException e1) {
-                e1.printStackTrace();
+            log.log(Level.WARNING, "Failed to reset the stream after detecting its charset", e);
+        }
+        if (isUTF8(buf, len)) {
+            return "UTF-8";
+        }
+        CharsetDetector detector = new CharsetDetector();
+        CharsetMatch match = detector.setText(len == buf.length ? buf : Arrays.copyOf(buf, len)).detect();
+        if (match == null || !Charset.isSupported(match.getName())) {
+            return Charset.defaultCharset().name();
+        }
+        return match.getName();
+    }
+
+    /**
+     * Check if bytes are ASCII (without null bytes) or UTF-8. A sequence
+     * cut by the end of the bytes is accepted.
+     */
+    static boolean isUTF8(byte[] buf, int len) {
+        int i = 0;
+        while (i < len) {
+            int b = buf[i++] & 0xFF;
+            if (b < 0x80) {
+                if (b == 0) {
+                    return false;
+                }
+                continue;
+            }
+            int more;
+            int min = 0x80;
+            int max = 0xBF;
+            if (b >= 0xC2 && b <= 0xDF) {
+                more = 1;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                more = 2;
+                if (b == 0xE0) {
+                    // overlong
+                    min = 0xA0;
+                } else if (b == 0xED) {
+                    // surrogates
+                    max = 0x9F;
+                }
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                more = 3;
+                if (b == 0xF0) {
+                    min = 0x90;
+                } else if (b == 0xF4) {
+                    // above U+10FFFF
+                    max = 0x8F;
+                }
+            } else {
+                return false;
+            }
+            for (; more > 0 && i < len; more--, i++) {
+                int c = buf[i] & 0xFF;
+                if (c < min || c > max) {
+                    return false;
+                }
+                min = 0x80;
+                max = 0xBF;
             }
-            return new InputStreamReader(is);
         }
+        return true;
     }
 
     public static void close(Closeable c) {
@@ -40,6 +40,7 @@ import org.watermint.sourcecolon.org.opensolaris.opengrok.util.IOUtils;
 
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.*;
 import java.security.InvalidParameterException;
 import java.text.Format;
@@ -124,6 +125,66 @@ public final class PageConfig {
         return getResourceFile().lastModified();
     }
 
+    /**
+     * Answer a conditional request for the related file or directory. The
+     * {@code ETag} and {@code Last-Modified} headers of the response are set
+     * from the time the file (or the files of the directory) and the index
+     * database were modified last. If the copy of the client is still up to
+     * date, the status is set to 304 (Not Modified), and the page must not
+     * be written.
+     *
+     * @param response the response to the request
+     * @return {@code true} if the page is not modified
+     */
+    public boolean isNotModified(HttpServletResponse response) {
+        if (resourceNotAvailable()) {
+            return false;
+        }
+        long lastModified = getLastModified();
+        if (isDir()) {
+            for (String filename : getResourceFileList()) {
+                lastModified = Math.max(lastModified, new File(getResourceFile(), filename).lastModified());
+            }
+            // the listing says "Today" for files modified within a day, so
+            // it changes by itself until then
+            if (System.currentTimeMillis() - lastModified < 86400000) {
+                return false;
+            }
+        }
+        lastModified = Math.max(lastModified, new File(getEnv().getDataRootFile(), "timestamp").lastModified());
+        // HTTP dates have a resolution of seconds
+        lastModified -= lastModified % 1000;
+        String etag = "W/\"" + Long.toHexString(lastModified) + '"';
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", lastModified);
+
+        boolean notModified;
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            notModified = false;
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                // weak comparison
+                if (tag.equals("*") || tag.equals(etag) || tag.equals(etag.substring(2))) {
+                    notModified = true;
+                    break;
+                }
+            }
+        } else {
+            long since;
+            try {
+                since = req.getDateHeader("If-Modified-Since");
+            } catch (IllegalArgumentException e) {
+                since = -1;
+            }
+            notModified = since >= lastModified;
+        }
+        if (notModified) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+        return notModified;
+    }
+
     /**
      * Get the int value of the given request parameter.
      *
@@ -859,6 +920,7 @@ public final class PageConfig {
         }
         sh.start = getSearchStart();
         sh.maxItems = getSearchMaxItems();
+        sh.cursor = req.getParameter("after");
         sh.contextPath = req.getContextPath();
         sh.isCrossRefSearch = getPrefix() == Prefix.SEARCH_R;
         sh.compressed = env.isCompressXref();
@@ -898,23 +960,26 @@ public final class PageConfig {
         }
     }
 
-    public String getPlainContents() {
-        ByteArrayOutputStream content = new ByteArrayOutputStream();
-        OutputStreamWriter writer = new OutputStreamWriter(content);
-        try {
-            try (BufferedInputStream bin = new BufferedInputStream(new FileInputStream(getResourceFile()))) {
-                Definitions defs = null;
-
-                defs = IndexDatabase.getDefinitions(resourceFile);
-                FileAnalyzerFactory a = AnalyzerGuru.find(resourceFile.getName());
-                AnalyzerGuru.writeXref(a, new InputStreamReader(bin), writer, defs, Project.getProject(resourceFile));
-
-                writer.flush();
-                return content.toString();
-            }
+    /**
+     * Write the cross reference of the requested file. The xref written by
+     * the indexer is streamed from the data root. If it is missing or older
+     * than the file, the xref is generated from the file.
+     *
+     * @param out the destination (the writer of the page)
+     * @see #getCurrentDataFile()
+     */
+    public void writeXref(Writer out) {
+        File dataFile = getCurrentDataFile();
+        if (dataFile != null) {
+            Util.dump(out, dataFile, dataFile.getName().endsWith(".gz"));
+            return;
+        }
+        try (Reader in = IOUtils.readerWithCharsetDetect(getResourceFile())) {
+            Definitions defs = IndexDatabase.getDefinitions(resourceFile);
+            FileAnalyzerFactory a = AnalyzerGuru.find(resourceFile.getName());
+            AnalyzerGuru.writeXref(a, in, out, defs, Project.getProject(resourceFile));
         } catch (IOException | ParseException | ClassNotFoundException e) {
-            e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-            return "";
+            log.log(Level.WARNING, "Failed to write the xref of " + getPath(), e);
         }
     }
 
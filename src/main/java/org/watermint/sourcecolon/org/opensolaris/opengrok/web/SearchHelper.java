@@ -26,8 +26,6 @@ package org.watermint.sourcecolon.org.opensolaris.opengrok.web;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Fieldable;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.search.*;
 import org.apache.lucene.search.spell.SpellChecker;
@@ -35,12 +33,15 @@ import org.apache.lucene.store.FSDirectory;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.CompatibleAnalyser;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.Definitions;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.FileAnalyzer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.configuration.RuntimeEnvironment;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.search.Deadline;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.search.QueryBuilder;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.search.Results;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.search.SearchAfterCollector;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.search.SearcherPool;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.search.Summarizer;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.search.context.Context;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.search.context.LineMatcher;
-import org.watermint.sourcecolon.org.opensolaris.opengrok.util.IOUtils;
 
 import java.io.*;
 import java.util.*;
@@ -83,6 +84,13 @@ public class SearchHelper {
      * max. number of result items to show
      */
     public int maxItems;
+    /**
+     * the cursor of the page to show, i.e. the position of the last hit of the
+     * previous page as returned by {@link #getNextCursor()}. If it is still
+     * valid, only the hits of the page are searched instead of all hits up to
+     * {@link #start}.
+     */
+    public String cursor;
     /**
      * the QueryBuilder used to create the query
      */
@@ -114,10 +122,21 @@ public class SearchHelper {
      * {@link #prepareExec(SortedSet)}.
      */
     public IndexSearcher searcher;
+    /**
+     * the time budget of the search and the creation of the result page.
+     * If not set, {@link #prepareExec(SortedSet)} creates one using
+     * {@link RuntimeEnvironment#getSearchTimeout()}.
+     */
+    public Deadline deadline;
     /**
      * list of docs which result from the executing the query
      */
     public ScoreDoc[] hits;
+    /**
+     * the index of the first element of {@link #hits} within all hits of the
+     * query
+     */
+    public int hitsStart;
 
     public File getDataRoot() {
         return dataRoot;
@@ -167,10 +186,28 @@ public class SearchHelper {
         return searcher;
     }
 
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Check if the results are incomplete, because the search or the
+     * creation of the result page has been stopped at the deadline.
+     *
+     * @return true if the results are partial
+     */
+    public boolean isPartial() {
+        return deadline != null && deadline.isMissed();
+    }
+
     public ScoreDoc[] getHits() {
         return hits;
     }
 
+    public int getHitsStart() {
+        return hitsStart;
+    }
+
     public int getTotalHits() {
         return totalHits;
     }
@@ -205,6 +242,11 @@ public class SearchHelper {
      * {@link #prepareExec(SortedSet)}.
      */
     private Sort sort;
+    /**
+     * the generation of the index searched, see
+     * {@link SearcherPool#getGeneration(IndexSearcher)}.
+     */
+    private String generation;
     /**
      * projects to use to setup indexer searchers. Usually setup via
      * {@link #prepareExec(SortedSet)}.
@@ -241,6 +283,7 @@ public class SearchHelper {
      * <ul>
      * <li>{@link #query}</li>
      * <li>{@link #searcher}</li>
+     * <li>{@link #deadline} if not already set</li>
      * <li>{@link #sort}</li>
      * <li>{@link #projects}</li>
      * <li>{@link #errorMsg} if an error occurs</li>
@@ -255,6 +298,9 @@ public class SearchHelper {
         if (redirect != null || errorMsg != null) {
             return this;
         }
+        if (deadline == null) {
+            deadline = new Deadline(RuntimeEnvironment.getInstance().getSearchTimeout());
+        }
         // the Query created by the QueryBuilder
         try {
             query = builder.build();
@@ -263,31 +309,9 @@ public class SearchHelper {
                 return this;
             }
             this.projects = projects;
-            File indexDir = new File(dataRoot, "index");
-            if (projects.isEmpty()) {
-                //no project setup
-                FSDirectory dir = FSDirectory.open(indexDir);
-                searcher = new IndexSearcher(IndexReader.open(dir));
-            } else if (projects.size() == 1) {
-                // just 1 project selected
-                FSDirectory dir = FSDirectory.open(new File(indexDir, projects.first()));
-                searcher = new IndexSearcher(IndexReader.open(dir));
-            } else {
-                //more projects
-                IndexReader[] searchables = new IndexReader[projects.size()];
-                int ii = 0;
-                //TODO might need to rewrite to Project instead of
-                // String , need changes in og_projects.jspf too
-                for (String proj : projects) {
-                    FSDirectory dir = FSDirectory.open(new File(indexDir, proj));
-                    searchables[ii++] = IndexReader.open(dir);
-                }
-                searcher = new IndexSearcher(new MultiReader(searchables));
-            }
-            // TODO check if below is somehow reusing sessions so we don't
-            // requery again and again, I guess 2min timeout sessions could be
-            // usefull, since you click on the next page within 2mins, if not,
-            // then wait ;)
+            //TODO might need to rewrite to Project instead of
+            // String , need changes in og_projects.jspf too
+            searcher = SearcherPool.getInstance().acquire(dataRoot, projects);
             switch (order) {
                 case LASTMODIFIED:
                     sort = new Sort(new SortField("date", SortField.STRING, true));
@@ -320,11 +344,13 @@ public class SearchHelper {
      * <li>all fields required for and populated by {@link #prepareExec(SortedSet)})</li>
      * <li>{@link #start} (default: 0)</li>
      * <li>{@link #maxItems} (default: 0)</li>
+     * <li>{@link #cursor} (default: null)</li>
      * <li>{@link #isCrossRefSearch} (default: false)</li>
      * </ul>
      * Populates/sets:
      * <ul>
      * <li>{@link #hits} (see {@link TopFieldDocs#scoreDocs})</li>
+     * <li>{@link #hitsStart}</li>
      * <li>{@link #totalHits} (see {@link TopFieldDocs#totalHits})</li>
      * <li>{@link #contextPath}</li>
      * <li>{@link #errorMsg} if an error occurs</li>
@@ -338,7 +364,33 @@ public class SearchHelper {
             return this;
         }
         try {
-            TopFieldDocs fdocs = searcher.search(query, null, start + maxItems, sort);
+            // paging through the results or repeating a search is answered
+            // from the cache as long as the index doesn't change
+            SearchResultCache cache = SearchResultCache.getInstance();
+            String key = SearchResultCache.getKey(builder.getQueries(), projects, order);
+            generation = SearcherPool.getInstance().getGeneration(searcher);
+            TopDocs fdocs = cache.get(key, generation, start + maxItems);
+            hitsStart = 0;
+            if (fdocs == null) {
+                // the next page of a result only needs the hits of the page
+                ScoreDoc after = getCursorHit();
+                if (after instanceof FieldDoc) {
+                    SearchAfterCollector collector = new SearchAfterCollector(sort, (FieldDoc) after, maxItems);
+                    deadline.search(searcher, query, collector);
+                    fdocs = collector.topDocs();
+                    hitsStart = start;
+                } else if (after != null) {
+                    TopScoreDocCollector collector = TopScoreDocCollector.create(maxItems, after, false);
+                    deadline.search(searcher, query, collector);
+                    fdocs = collector.topDocs();
+                    hitsStart = start;
+                } else {
+                    fdocs = SearcherPool.getInstance().search(searcher, query, start + maxItems, sort, deadline);
+                    if (!deadline.isMissed()) {
+                        cache.put(key, generation, fdocs);
+                    }
+                }
+            }
             totalHits = fdocs.totalHits;
             hits = fdocs.scoreDocs;
             // Bug #3900: Check if this is a search for a single term, and that
@@ -350,8 +402,8 @@ public class SearchHelper {
             // one single definition term AND we have exactly one match AND there
             // is only one definition of that symbol in the document that matches.
             boolean uniqueDefinition = false;
-            if (isSingleDefinitionSearch && hits != null && hits.length == 1) {
-                Document doc = searcher.doc(hits[0].doc);
+            if (isSingleDefinitionSearch && hits != null && hits.length == 1 && totalHits == 1) {
+                Document doc = searcher.doc(hits[0].doc, Results.HIT_FIELDS);
                 if (doc.getFieldable("tags") != null) {
                     byte[] rawTags = doc.getFieldable("tags").getBinaryValue();
                     Definitions tags = Definitions.deserialize(rawTags);
@@ -364,7 +416,7 @@ public class SearchHelper {
             // @TODO fix me. I should try to figure out where the exact hit is
             // instead of returning a page with just _one_ entry in....
             if (uniqueDefinition && hits != null && hits.length > 0 && isCrossRefSearch) {
-                redirect = contextPath + Prefix.XREF_P + Util.URIEncodePath(searcher.doc(hits[0].doc).get("path")) + '#' + Util.URIEncode(((TermQuery) query).getTerm().text());
+                redirect = contextPath + Prefix.XREF_P + Util.URIEncodePath(searcher.doc(hits[0].doc, Results.HIT_FIELDS).get("path")) + '#' + Util.URIEncode(((TermQuery) query).getTerm().text());
             }
         } catch (BooleanQuery.TooManyClauses e) {
             errorMsg = "Too many results for wildcard!";
@@ -374,6 +426,60 @@ public class SearchHelper {
         return this;
     }
 
+    /**
+     * Get the cursor of the page following the current one, which lets the
+     * search of the next page continue after the last hit of this page.
+     *
+     * @return {@code null} if this is the last page, the cursor otherwise.
+     * @see #cursor
+     */
+    public String getNextCursor() {
+        int end = getThisPageEndIndex();
+        // the hits of a partial result are not necessarily the top hits
+        if (hits == null || generation == null || isPartial() || end >= totalHits || end <= hitsStart || end - hitsStart > hits.length) {
+            return null;
+        }
+        ScoreDoc last = hits[end - hitsStart - 1];
+        StringBuilder sb = new StringBuilder();
+        sb.append(order).append(':').append(generation).append(':').append(end).append(':').append(last.doc);
+        if (order == SortOrder.RELEVANCY) {
+            // sorted by relevance, the score is the only sort field
+            float score = last instanceof FieldDoc ? (Float) ((FieldDoc) last).fields[0] : last.score;
+            sb.append(':').append(score);
+        } else if (((FieldDoc) last).fields[0] != null) {
+            sb.append(':').append(((FieldDoc) last).fields[0]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the last hit of the previous page from the {@link #cursor}.
+     *
+     * @return {@code null} if there is no cursor or it isn't valid for this
+     *         page and index anymore, the last hit of the previous page
+     *         otherwise.
+     */
+    private ScoreDoc getCursorHit() {
+        if (cursor == null || generation == null || start == 0) {
+            return null;
+        }
+        String[] parts = cursor.split(":", 5);
+        if (parts.length < 4 || !parts[0].equals(order.toString())
+                || !parts[1].equals(generation) || !parts[2].equals(Integer.toString(start))) {
+            return null;
+        }
+        try {
+            int doc = Integer.parseInt(parts[3]);
+            if (order == SortOrder.RELEVANCY) {
+                return parts.length < 5 ? null : new ScoreDoc(doc, Float.parseFloat(parts[4]));
+            }
+            return new FieldDoc(doc, Float.NaN, new Object[]{parts.length < 5 ? null : parts[4]});
+        } catch (NumberFormatException e) {
+            log.log(Level.INFO, "Invalid search cursor " + cursor, e);
+            return null;
+        }
+    }
+
     private static final Pattern TABSPACE = Pattern.compile("[\t ]+");
 
     private static void getSuggestion(String term, SpellChecker checker, List<String> result) throws IOException {
@@ -612,9 +718,9 @@ public class SearchHelper {
         File xrefDataDir = new File(getDataRoot(), Prefix.XREF_P.toString());
 
         for (int i = getStart(); i < getThisPageEndIndex(); i++) {
-            int docId = getHits()[i].doc;
+            int docId = getHits()[i - getHitsStart()].doc;
             try {
-                Document doc = getSearcher().doc(docId);
+                Document doc = getSearcher().doc(docId, Results.HIT_FIELDS);
                 String path = doc.get("path");
                 String parent = path.substring(0, path.lastIndexOf('/'));
 
@@ -698,7 +804,7 @@ public class SearchHelper {
         OutputStreamWriter writer = new OutputStreamWriter(content);
 
         try {
-            Results.prettyPrint(writer, this, getStart(), getThisPageEndIndex());
+            Results.prettyPrint(writer, this, getStart() - getHitsStart(), getThisPageEndIndex() - getHitsStart());
             writer.flush();
             return content.toString();
         } catch (IOException | ClassNotFoundException e) {
@@ -751,6 +857,7 @@ public class SearchHelper {
         int label = labelStart;
         int labelEnd = label + 11;
         String params = createUrl(false);
+        String nextCursor = getNextCursor();
 
         for (int i = pagesStart; i < getTotalHits() && label <= labelEnd; i += getMaxItems()) {
             Map<String,Object> page = new HashMap<>();
@@ -768,7 +875,11 @@ public class SearchHelper {
                 page.put("link", "#");
             } else {
                 page.put("active", false);
-                page.put("link", getContextPath() + Prefix.SEARCH_R + "?n=" + getMaxItems() + "&amp;start=" + i + params);
+                StringBuilder link = new StringBuilder(getContextPath() + Prefix.SEARCH_R + "?n=" + getMaxItems() + "&amp;start=" + i + params);
+                if (i == getThisPageEndIndex()) {
+                    Util.appendQuery(link, "after", nextCursor);
+                }
+                page.put("link", link.toString());
             }
             label++;
             result.add(page);
@@ -822,10 +933,11 @@ public class SearchHelper {
     }
 
     /**
-     * Free any resources associated with this helper (that includes closing
+     * Free any resources associated with this helper (that includes releasing
      * the used {@link #searcher}).
      */
     public void destroy() {
-        IOUtils.close(searcher);
+        SearcherPool.getInstance().release(searcher);
+        searcher = null;
     }
 }
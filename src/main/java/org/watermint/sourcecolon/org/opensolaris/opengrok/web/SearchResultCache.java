@@ -0,0 +1,246 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+package org.watermint.sourcecolon.org.opensolaris.opengrok.web;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.configuration.RuntimeEnvironment;
+
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of the top hits of recent searches, so that paging through the
+ * results or repeating a popular search doesn't run the query again. The
+ * results are cached per query, set of projects and sort order, together
+ * with the generation of the index they were computed from: a result of an
+ * older generation is never returned, since its document numbers may refer
+ * to other documents now. Least recently used results are dropped when the
+ * cache exceeds its size, and results expire after a while. The hit rate
+ * and the size of the cache are logged every {@value #STATS_INTERVAL}
+ * lookups.
+ *
+ * @see RuntimeEnvironment#getSearchCacheSize()
+ * @see RuntimeEnvironment#getSearchCacheTimeout()
+ */
+public final class SearchResultCache {
+
+    private static final Logger log = Logger.getLogger(SearchResultCache.class.getName());
+    private static final SearchResultCache instance = new SearchResultCache();
+    /**
+     * The number of lookups between two log records of the statistics.
+     */
+    static final int STATS_INTERVAL = 1000;
+    /**
+     * Estimated size of a cached hit (a {@link ScoreDoc} or a
+     * {@link org.apache.lucene.search.FieldDoc} with a sort value).
+     */
+    private static final int HIT_SIZE = 96;
+
+    private static final class Entry {
+
+        final String generation;
+        final TopDocs docs;
+        final long created;
+        final long size;
+
+        Entry(String generation, TopDocs docs, long size) {
+            this.generation = generation;
+            this.docs = docs;
+            this.created = System.currentTimeMillis();
+            this.size = size;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private long hitCount;
+    private long missCount;
+
+    private SearchResultCache() {
+    }
+
+    /**
+     * Get the cache of this process.
+     *
+     * @return the search result cache
+     */
+    public static SearchResultCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Create the key of a search.
+     *
+     * @param queries  the query fields and their values
+     *                 (see {@link org.watermint.sourcecolon.org.opensolaris.opengrok.search.QueryBuilder#getQueries()})
+     * @param projects the projects searched
+     * @param order    the sort order
+     * @return the key
+     */
+    public static String getKey(Map<String, String> queries, Collection<String> projects, SortOrder order) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(order).append('\0');
+        for (String project : new TreeSet<>(projects)) {
+            sb.append(project).append('\0');
+        }
+        for (Map.Entry<String, String> q : new TreeMap<>(queries).entrySet()) {
+            sb.append('\0').append(q.getKey()).append('=').append(q.getValue().trim());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the top hits of a search.
+     *
+     * @param key        the key of the search
+     * @param generation the generation of the index searched
+     * @param n          the number of hits wanted
+     * @return the top {@code n} hits (fewer if there are no more), or null if
+     *         they are not cached
+     */
+    public TopDocs get(String key, String generation, int n) {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        if (env.getSearchCacheSize() <= 0 || generation == null) {
+            return null;
+        }
+        TopDocs docs;
+        String stats = null;
+        synchronized (this) {
+            docs = lookup(key, generation, n, env.getSearchCacheTimeout());
+            if ((hitCount + missCount) % STATS_INTERVAL == 0) {
+                stats = String.format("Search result cache: %d hits, %d misses, hit rate %.1f%%, %d results, %d KB",
+                        hitCount, missCount, 100 * getHitRate(), entries.size(), size / 1024);
+            }
+        }
+        if (stats != null) {
+            log.log(Level.INFO, stats);
+        }
+        return docs;
+    }
+
+    /**
+     * Look up the hits of a search and count the hit or miss, with the lock
+     * of the cache held.
+     */
+    private TopDocs lookup(String key, String generation, int n, long timeout) {
+        Entry e = entries.get(key);
+        if (e != null && (!e.generation.equals(generation) ||
+                System.currentTimeMillis() - e.created > timeout)) {
+            remove(key);
+            e = null;
+        }
+        // a cached result which is shorter than requested is only good
+        // if there are no more hits
+        if (e == null || (e.docs.scoreDocs.length < n && e.docs.scoreDocs.length < e.docs.totalHits)) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        if (e.docs.scoreDocs.length <= n) {
+            return e.docs;
+        }
+        return new TopDocs(e.docs.totalHits, Arrays.copyOf(e.docs.scoreDocs, n), e.docs.getMaxScore());
+    }
+
+    /**
+     * Cache the top hits of a search.
+     *
+     * @param key        the key of the search
+     * @param generation the generation of the index searched
+     * @param docs       the top hits
+     */
+    public void put(String key, String generation, TopDocs docs) {
+        long maxSize = RuntimeEnvironment.getInstance().getSearchCacheSize();
+        long entrySize = HIT_SIZE * (long) docs.scoreDocs.length + 2 * key.length() + 64;
+        if (generation == null || entrySize > maxSize / 4) {
+            // don't let a single search flush the whole cache
+            return;
+        }
+        synchronized (this) {
+            remove(key);
+            entries.put(key, new Entry(generation, docs, entrySize));
+            size += entrySize;
+            Iterator<Entry> it = entries.values().iterator();
+            while (size > maxSize && it.hasNext()) {
+                size -= it.next().size;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all cached results and reset the statistics.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+        hitCount = 0;
+        missCount = 0;
+    }
+
+    /**
+     * Get the number of searches answered from the cache.
+     *
+     * @return the number of cache hits
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Get the number of searches which had to be run.
+     *
+     * @return the number of cache misses
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Get the share of searches answered from the cache.
+     *
+     * @return the hit rate between 0 and 1
+     */
+    public synchronized double getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Get the estimated memory used by the cached results.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    private void remove(String key) {
+        Entry e = entries.remove(key);
+        if (e != null) {
+            size -= e.size;
+        }
+    }
+}
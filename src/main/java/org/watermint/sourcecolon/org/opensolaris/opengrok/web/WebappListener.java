@@ -24,6 +24,7 @@
 package org.watermint.sourcecolon.org.opensolaris.opengrok.web;
 
 import org.watermint.sourcecolon.org.opensolaris.opengrok.configuration.RuntimeEnvironment;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.search.SearcherPool;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
@@ -65,5 +66,6 @@ public final class WebappListener implements ServletContextListener {
     @Override
     public void contextDestroyed(final ServletContextEvent servletContextEvent) {
         RuntimeEnvironment.getInstance().stopConfigurationListenerThread();
+        SearcherPool.getInstance().close();
     }
 }
@@ -29,16 +29,22 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.junit.Test;
+import org.watermint.sourcecolon.filetype.TokenizerPlugin;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.archive.ZipAnalyzer;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.c.CxxAnalyzerFactory;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.executables.JarAnalyzer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.perl.PerlAnalyzerFactory;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.plain.PlainAnalyzer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.plain.PlainAnalyzerFactory;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.plain.XMLAnalyzer;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.sh.ShAnalyzer;
 import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.sh.ShAnalyzerFactory;
@@ -163,4 +169,72 @@ public class AnalyzerGuruTest {
         faf = AnalyzerGuru.find("GNUMakefile");
         assertSame(ShAnalyzerFactory.class, faf.getClass());
     }
+
+    /**
+     * Test that the longest magic string a file starts with decides, even if
+     * it is longer than eight bytes.
+     */
+    @Test
+    public void matchesLongestMagic() throws Exception {
+        InputStream in = new ByteArrayInputStream(
+                "#!/usr/bin/perl -w\nprint 1;\n".getBytes("US-ASCII"));
+        assertSame(PerlAnalyzerFactory.class, AnalyzerGuru.find(in).getClass());
+        in = new ByteArrayInputStream(
+                "#!/bin/ksh\nprint 1\n".getBytes("US-ASCII"));
+        assertSame(ShAnalyzerFactory.class, AnalyzerGuru.find(in).getClass());
+    }
+
+    @Test
+    public void testUTF16ByteOrderMark() throws Exception {
+        byte[] xml = "\uFEFF<?xml version=\"1.0\"?>".getBytes("UTF-16LE");
+        FileAnalyzer fa = AnalyzerGuru.getAnalyzer(new ByteArrayInputStream(xml), "/dummy/file");
+        assertSame(XMLAnalyzer.class, fa.getClass());
+    }
+
+    @Test
+    public void addMagicNumbers() throws Exception {
+        final byte[] magic = {(byte) 0x89, 'U', 'N', 'L', 'I', 'K', 'E', 'L', 'Y'};
+        InputStream in = new ByteArrayInputStream(Arrays.copyOf(magic, 32));
+        assertNull(AnalyzerGuru.find(in));
+
+        FileAnalyzerFactory faf = AnalyzerGuru.findFactory(ShAnalyzerFactory.class.getName());
+        AnalyzerGuru.addMagicNumbers(new TokenizerPlugin() {
+            public String mimeType() {
+                return "application/x-unlikely";
+            }
+
+            public List<String> possibleSuffixes() {
+                return null;
+            }
+
+            public List<byte[]> possibleMagicNumbers() {
+                return Collections.singletonList(magic);
+            }
+        }, faf);
+        in = new ByteArrayInputStream(Arrays.copyOf(magic, 32));
+        assertSame(faf, AnalyzerGuru.find(in));
+    }
+
+    @Test
+    public void addKnownMagicNumber() throws Exception {
+        final byte[] magic = "#!/bin/sh\n".getBytes("ISO-8859-1");
+        FileAnalyzerFactory sh = AnalyzerGuru.find(new ByteArrayInputStream(magic));
+        assertNotNull(sh);
+
+        FileAnalyzerFactory faf = AnalyzerGuru.findFactory(PlainAnalyzerFactory.class.getName());
+        AnalyzerGuru.addMagicNumbers(new TokenizerPlugin() {
+            public String mimeType() {
+                return "text/x-known";
+            }
+
+            public List<String> possibleSuffixes() {
+                return null;
+            }
+
+            public List<byte[]> possibleMagicNumbers() {
+                return Collections.singletonList(Arrays.copyOf(magic, 2));
+            }
+        }, faf);
+        assertSame(sh, AnalyzerGuru.find(new ByteArrayInputStream(magic)));
+    }
 }
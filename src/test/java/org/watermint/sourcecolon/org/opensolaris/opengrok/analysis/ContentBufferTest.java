@@ -0,0 +1,82 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+
+package org.watermint.sourcecolon.org.opensolaris.opengrok.analysis;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the {@link ContentBuffer} class.
+ */
+public class ContentBufferTest {
+
+    private static String readAll(Reader in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[1000];
+        int n;
+        while ((n = in.read(buf)) >= 0) {
+            sb.append(buf, 0, n);
+        }
+        in.close();
+        return sb.toString();
+    }
+
+    @Test
+    public void keepsSmallContentInMemory() throws IOException {
+        ContentBuffer buffer = new ContentBuffer();
+        buffer.read(new StringReader("small file"), 1000);
+        assertTrue(buffer.isInMemory());
+        assertEquals(10, buffer.length());
+        assertEquals("small file", new String(buffer.getChars(), 0, buffer.getLength()));
+        assertEquals("small file", readAll(buffer.getReader()));
+    }
+
+    @Test
+    public void buffersLargeContentInFile() throws IOException {
+        StringBuilder sb = new StringBuilder("x");
+        while (sb.length() < 200 * 1024) {
+            // surrogate pairs at odd offsets, so that one of them is split
+            // by the end of the memory buffer
+            sb.append("\uD834\uDD1E");
+        }
+        String text = sb.toString();
+        ContentBuffer buffer = new ContentBuffer();
+        buffer.read(new StringReader(text), 0);
+        assertFalse(buffer.isInMemory());
+        assertEquals(text.length(), buffer.length());
+        assertTrue(buffer.getLength() < text.length());
+        // each reader reads all of the content
+        assertEquals(text, readAll(buffer.getReader()));
+        assertEquals(text, readAll(buffer.getReader()));
+
+        buffer.read(new StringReader("next"), 0);
+        assertTrue(buffer.isInMemory());
+        assertEquals("next", readAll(buffer.getReader()));
+    }
+}
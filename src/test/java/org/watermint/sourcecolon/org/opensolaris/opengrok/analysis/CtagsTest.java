@@ -25,7 +25,10 @@
 package org.watermint.sourcecolon.org.opensolaris.opengrok.analysis;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -128,4 +131,35 @@ public class CtagsTest {
         }
         assertEquals("method count", names.length, count);
     }
+
+    /**
+     * Test that the file after a timeout is given to a new ctags process,
+     * and not to the one being killed, which would give it no definitions.
+     * Uses a shell script in place of ctags, which hangs on some files.
+     */
+    @Test
+    public void restartsAfterTimeout() throws Exception {
+        if (!new File("/bin/sh").canExecute()) {
+            return;
+        }
+        File script = File.createTempFile("ctags", ".sh");
+        try (Writer out = new FileWriter(script)) {
+            // the sleep keeps the output open after the script is killed
+            out.write("while read f; do\n"
+                    + "  case \"$f\" in *slow*) sleep 3;; esac\n"
+                    + "  echo __ctags_done_with_file__\n"
+                    + "done\n");
+        }
+        Ctags slow = new Ctags();
+        slow.setCommand(Arrays.asList("/bin/sh", script.getAbsolutePath()));
+        slow.setTimeout(500);
+        try {
+            assertNotNull(slow.doCtags("fast.c\n"));
+            assertNull(slow.doCtags("slow.c\n"));
+            assertNotNull(slow.doCtags("fast.c\n"));
+        } finally {
+            slow.close();
+            assertTrue(script.delete());
+        }
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+
+package org.watermint.sourcecolon.org.opensolaris.opengrok.analysis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Compares the size and the encoding and decoding time of the compact
+ * format of {@link Definitions} with the Java serialization used before.
+ * Not a unit test, run it with
+ * {@code java -cp ... DefinitionsBenchmark [tags per file] [iterations]}.
+ */
+public class DefinitionsBenchmark {
+
+    private static final String[] TYPES = {"function", "variable", "macro", "struct", "member", "typedef"};
+
+    private static Definitions create(int count) {
+        Definitions defs = new Definitions();
+        for (int i = 0; i < count; i++) {
+            // symbols are defined several times, several on a line
+            String symbol = "symbol_" + (i % (count / 3 + 1));
+            int line = 10 + i * 7 / 2;
+            defs.addTag(line, symbol, TYPES[i % TYPES.length],
+                    "    static int " + symbol + "(struct context *ctx, int flags) {");
+        }
+        return defs;
+    }
+
+    private static byte[] javaSerialize(Definitions defs) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ObjectOutputStream(bytes).writeObject(defs);
+        return bytes.toByteArray();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        Definitions defs = create(count);
+        byte[] java = javaSerialize(defs);
+        byte[] compact = defs.serialize();
+        System.out.println(count + " tags: java serialization " + java.length
+                + " bytes, compact " + compact.length + " bytes");
+
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                javaSerialize(defs);
+            }
+            long javaEncode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                defs.serialize();
+            }
+            long compactEncode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                ((Definitions) new ObjectInputStream(new ByteArrayInputStream(java)).readObject()).occurrences("x");
+            }
+            long javaDecode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                Definitions.deserialize(compact).occurrences("x");
+            }
+            long compactDecode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                Definitions.deserialize(compact).getTags();
+            }
+            long compactTags = System.nanoTime() - start;
+            if (round > 0) {
+                System.out.printf("encode: java %.1f us, compact %.1f us%n",
+                        javaEncode / 1000.0 / iterations, compactEncode / 1000.0 / iterations);
+                System.out.printf("decode and look up a symbol: java %.1f us, compact %.1f us%n",
+                        javaDecode / 1000.0 / iterations, compactDecode / 1000.0 / iterations);
+                System.out.printf("decode the tags only: compact %.1f us%n",
+                        compactTags / 1000.0 / iterations);
+            }
+        }
+    }
+}
@@ -25,6 +25,8 @@
 
 package org.watermint.sourcecolon.org.opensolaris.opengrok.analysis;
 
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
 import java.util.Set;
 
 import org.junit.After;
@@ -168,5 +170,46 @@ public class DefinitionsTest {
         assertEquals(instance.getSymbols().size(), instance2.getSymbols().size());
     }
 
+    /**
+     * Test of the compact format written by serialize.
+     */
+    @Test
+    public void serializeCompact() throws Exception {
+        Definitions instance = new Definitions();
+        instance.addTag(1, "one", "function", "int one(void) {");
+        instance.addTag(300, "two", "variable", "static int two, \u00e4;");
+        instance.addTag(300, "\u00e4", "variable", "static int two, \u00e4;");
+        byte serial[] = instance.serialize();
+        assertEquals('D', serial[0]);
+        Definitions instance2 = Definitions.deserialize(serial);
+        assertEquals(3, instance2.getTags().size());
+        Definitions.Tag tag = instance2.getTags().get(2);
+        assertEquals(300, tag.line);
+        assertEquals("\u00e4", tag.symbol);
+        assertEquals("variable", tag.type);
+        assertEquals("static int two, \u00e4;", tag.text);
+        String[] type = new String[1];
+        assertTrue(instance2.hasDefinitionAt("two", 300, type));
+        assertEquals("variable", type[0]);
+        assertEquals(1, instance2.occurrences("one"));
+        assertArrayEquals(serial, instance2.serialize());
+    }
+
+    /**
+     * Test that definitions stored with Java serialization can be read.
+     */
+    @Test
+    public void deserializeJavaSerialization() throws Exception {
+        Definitions instance = new Definitions();
+        instance.addTag(1, "one", "", "");
+        instance.addTag(3, "two", "", "");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ObjectOutputStream(bytes).writeObject(instance);
+        Definitions instance2 = Definitions.deserialize(bytes.toByteArray());
+        assertEquals(2, instance2.getTags().size());
+        assertTrue(instance2.hasSymbol("two"));
+        assertTrue(instance2.serialize().length < bytes.size());
+    }
+
 
 }
@@ -131,4 +131,33 @@ public class JFlexTokenizerTest {
         String[] expectedTokens = {"VARIABLE", "abc"};
         testOffsetAttribute(ShSymbolTokenizer.class, inputText, expectedTokens);
     }
+
+    /**
+     * The tokens are copied from the scanner buffer, which is reused for
+     * the next input. Keywords are looked up in the buffer too, ignoring
+     * the case for case insensitive languages.
+     */
+    @Test
+    public void testTermsFromScannerBuffer() throws Exception {
+        testOffsetAttribute(FortranSymbolTokenizer.class,
+                "1 INTEGER Token1 = token2 + Call",
+                new String[]{"Token1", "token2"});
+        testOffsetAttribute(CSymbolTokenizer.class,
+                "static int alpha; return beta;",
+                new String[]{"alpha", "beta"});
+
+        PlainFullTokenizer tokenizer = new PlainFullTokenizer((Reader) null);
+        CharTermAttribute term = tokenizer.addAttribute(CharTermAttribute.class);
+        char[] text = "Alpha BETA gamma".toCharArray();
+        tokenizer.reInit(text, text.length);
+        assertTrue(tokenizer.incrementToken());
+        assertEquals("alpha", term.toString());
+        assertTrue(tokenizer.incrementToken());
+        assertEquals("beta", term.toString());
+        text = "Delta".toCharArray();
+        tokenizer.reInit(text, text.length);
+        assertTrue(tokenizer.incrementToken());
+        assertEquals("delta", term.toString());
+        assertFalse(tokenizer.incrementToken());
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+
+package org.watermint.sourcecolon.org.opensolaris.opengrok.analysis;
+
+import org.junit.Test;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.plain.PlainFullTokenizer;
+
+import java.io.CharArrayReader;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the {@link LineIndex} class.
+ */
+public class LineIndexTest {
+
+    /**
+     * Create the index of a text, with tabs expanded while reading like
+     * for a project with a tab size.
+     */
+    private static LineIndex create(String text) throws Exception {
+        LineIndex.BlockRecorder recorder = new LineIndex.BlockRecorder(new StringReader(text));
+        Reader in = new ExpandTabsReader(recorder, 8);
+        StringBuilder content = new StringBuilder();
+        char[] buf = new char[4096];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            content.append(buf, 0, n);
+        }
+        char[] chars = content.toString().toCharArray();
+        PlainFullTokenizer tokens = new PlainFullTokenizer((Reader) null);
+        tokens.reInit(chars, chars.length);
+        return recorder.create(new CharArrayReader(chars), tokens);
+    }
+
+    @Test
+    public void findsBlocksOfTokens() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 3 * LineIndex.BLOCK_SIZE) {
+            // four tokens on three lines, with each kind of line break
+            sb.append("\tword more\r\nx\ry ");
+        }
+        String text = sb.toString();
+        LineIndex index = LineIndex.deserialize(create(text).serialize());
+
+        assertTrue(index.size() >= 3);
+        assertEquals(1, index.getLine(0));
+        assertEquals(0, index.getOffset(0));
+        for (int block = 1; block < index.size(); block++) {
+            int offset = index.getOffset(block);
+            assertEquals(offset, index.getEnd(block - 1));
+            // a block starts after a \n, at an x
+            assertEquals("\nx", text.substring(offset - 1, offset + 1));
+            int groups = text.substring(0, offset).split("\t", -1).length - 1;
+            assertEquals(2 * groups, index.getLine(block));
+            assertEquals(block, index.findBlock(4 * groups - 2));
+            assertEquals(block - 1, index.findBlock(4 * groups - 3));
+        }
+        assertEquals(-1, index.getEnd(index.size() - 1));
+        assertEquals(index.size() - 1, index.findBlock(Integer.MAX_VALUE));
+        assertEquals(0, index.findBlock(0));
+    }
+}
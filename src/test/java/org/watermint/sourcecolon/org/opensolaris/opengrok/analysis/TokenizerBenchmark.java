@@ -0,0 +1,141 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+
+package org.watermint.sourcecolon.org.opensolaris.opengrok.analysis;
+
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.c.CSymbolTokenizer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.c.CxxSymbolTokenizer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.csharp.CSharpSymbolTokenizer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.document.TroffFullTokenizer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.fortran.FortranSymbolTokenizer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.java.JavaSymbolTokenizer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.javascript.JavaScriptSymbolTokenizer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.lisp.LispSymbolTokenizer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.perl.PerlSymbolTokenizer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.php.PhpSymbolTokenizer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.plain.PlainFullTokenizer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.plain.PlainSymbolTokenizer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.python.PythonSymbolTokenizer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.sh.ShSymbolTokenizer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.tcl.TclSymbolTokenizer;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.analysis.vb.VBSymbolTokenizer;
+
+import java.io.Reader;
+
+/**
+ * Measures the tokens per second of the symbol and full text tokenizers
+ * of each language, on a few typical lines repeated to the size of a large
+ * source file. Not a unit test, run it with
+ * {@code java -cp ... TokenizerBenchmark [chars per file] [iterations]}.
+ */
+public class TokenizerBenchmark {
+
+    private static final String C_LIKE =
+            "static int lookup_symbol(struct table *tab, const char *name) {\n"
+                    + "    for (int i = 0; i < tab->count; i++) {\n"
+                    + "        if (strcmp(tab->entries[i].name, name) == 0) return i;\n"
+                    + "    }\n"
+                    + "    return -1; /* not found */\n"
+                    + "}\n";
+
+    private static final Object[][] LANGUAGES = {
+            {"c", CSymbolTokenizer.class, C_LIKE},
+            {"c++", CxxSymbolTokenizer.class, C_LIKE},
+            {"java", JavaSymbolTokenizer.class, C_LIKE},
+            {"c#", CSharpSymbolTokenizer.class, C_LIKE},
+            {"javascript", JavaScriptSymbolTokenizer.class, C_LIKE},
+            {"perl", PerlSymbolTokenizer.class,
+                    "sub lookup_symbol {\n    my ($table, $name) = @_;\n"
+                            + "    foreach my $entry (@{$table}) { return $entry if $entry->{name} eq $name; }\n"
+                            + "    return undef; # not found\n}\n"},
+            {"python", PythonSymbolTokenizer.class,
+                    "def lookup_symbol(table, name):\n    for entry in table.entries:\n"
+                            + "        if entry.name == name: return entry\n    return None  # not found\n"},
+            {"php", PhpSymbolTokenizer.class,
+                    "function lookup_symbol($table, $name) {\n    foreach ($table as $entry) {\n"
+                            + "        if ($entry->name == $name) return $entry;\n    }\n    return null;\n}\n"},
+            {"sh", ShSymbolTokenizer.class,
+                    "lookup_symbol() {\n    for entry in $TABLE; do\n"
+                            + "        if [ \"${entry}\" = \"$name\" ]; then echo $entry; fi\n    done\n}\n"},
+            {"tcl", TclSymbolTokenizer.class,
+                    "proc lookup_symbol {table name} {\n    foreach entry $table {\n"
+                            + "        if {[lindex $entry 0] eq $name} { return $entry }\n    }\n    return {}\n}\n"},
+            {"vb", VBSymbolTokenizer.class,
+                    "Function LookupSymbol(ByVal table As Table, ByVal name As String) As Integer\n"
+                            + "    For Each entry In table.Entries\n        If entry.Name = name Then Return entry.Index\n"
+                            + "    Next\n    Return -1\nEnd Function\n"},
+            {"fortran", FortranSymbolTokenizer.class,
+                    "      INTEGER FUNCTION LOOKUP(TABLE, NAME, COUNT)\n      DO 10 I = 1, COUNT\n"
+                            + "        IF (TABLE(I) .EQ. NAME) LOOKUP = I\n   10 CONTINUE\n      END\n"},
+            {"lisp", LispSymbolTokenizer.class,
+                    "(defun lookup-symbol (table name)\n  (loop for entry in table\n"
+                            + "        when (equal (entry-name entry) name) return entry))\n"},
+            {"plain symbols", PlainSymbolTokenizer.class, C_LIKE},
+            {"plain full", PlainFullTokenizer.class, C_LIKE},
+            {"troff", TroffFullTokenizer.class,
+                    ".SH DESCRIPTION\nThe \\fBlookup_symbol\\fR function finds the entry of a NAME in the TABLE,\n"
+                            + "and returns its index or -1 if it is not found.\n"},
+    };
+
+    private static char[] repeat(String lines, int size) {
+        StringBuilder sb = new StringBuilder(size + lines.length());
+        while (sb.length() < size) {
+            sb.append(lines);
+        }
+        return sb.toString().toCharArray();
+    }
+
+    private static long tokenize(JFlexTokenizer tokenizer, char[] text) throws Exception {
+        tokenizer.reInit(text, text.length);
+        long tokens = 0;
+        while (tokenizer.incrementToken()) {
+            tokens++;
+        }
+        return tokens;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1024 * 1024;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        for (Object[] language : LANGUAGES) {
+            @SuppressWarnings("unchecked")
+            Class<? extends JFlexTokenizer> klass = (Class<? extends JFlexTokenizer>) language[1];
+            JFlexTokenizer tokenizer = klass.getConstructor(Reader.class).newInstance((Reader) null);
+            char[] text = repeat((String) language[2], size);
+
+            for (int round = 0; round < 2; round++) {
+                // the first round warms up
+                long tokens = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    tokens += tokenize(tokenizer, text);
+                }
+                long time = System.nanoTime() - start;
+                if (round > 0) {
+                    System.out.printf("%-14s %10.0f tokens/s %6.1f M chars/s%n", language[0],
+                            tokens * 1e9 / time, 1e3 * text.length * iterations / time);
+                }
+            }
+        }
+    }
+}
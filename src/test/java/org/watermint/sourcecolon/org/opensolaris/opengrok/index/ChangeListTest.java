@@ -0,0 +1,66 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+
+package org.watermint.sourcecolon.org.opensolaris.opengrok.index;
+
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChangeListTest {
+    @Test
+    public void testNameStatus() throws Exception {
+        ChangeList changes = ChangeList.read(new StringReader(
+                "A\tsrc/new.c\n" +
+                "M\tsrc/main.c\n" +
+                "\n" +
+                "D\tsrc/old.c\n" +
+                "R100\tsrc/before.c\tsrc/after.c\n" +
+                "C75\tsrc/main.c\tsrc/copy.c\n" +
+                "src/dir\n"));
+
+        assertFalse(changes.isEmpty());
+        assertEquals(Arrays.asList("src/new.c", "src/after.c", "src/copy.c"), changes.getAdded());
+        assertEquals(Arrays.asList("src/main.c", "src/dir"), changes.getModified());
+        assertEquals(Arrays.asList("src/old.c", "src/before.c"), changes.getDeleted());
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        assertTrue(ChangeList.read(new StringReader("")).isEmpty());
+    }
+
+    @Test(expected = ParseException.class)
+    public void testUnknownStatus() throws Exception {
+        ChangeList.read(new StringReader("X\tsrc/main.c\n"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testMissingStatus() throws Exception {
+        ChangeList.read(new StringReader("\tsrc/main.c\n"));
+    }
+}
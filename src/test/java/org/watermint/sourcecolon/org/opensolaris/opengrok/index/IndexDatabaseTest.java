@@ -0,0 +1,207 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+
+package org.watermint.sourcecolon.org.opensolaris.opengrok.index;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.spell.SpellChecker;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.configuration.RuntimeEnvironment;
+import org.watermint.sourcecolon.org.opensolaris.opengrok.util.FileUtilities;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the {@link IndexDatabase} class. A shell script stands in for
+ * ctags, and defines one symbol per file, named like the file.
+ */
+public class IndexDatabaseTest {
+
+    private File root;
+    private File sourceRoot;
+    private File dataRoot;
+    private String oldSourceRoot;
+    private String oldDataRoot;
+    private String oldCtags;
+
+    private static void write(File file, String text) throws IOException {
+        try (Writer out = new FileWriter(file)) {
+            out.write(text);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        // the analyzer threads use the configuration of the process, which
+        // other tests may have replaced without registering it here
+        env.setConfiguration(env.getConfiguration());
+        oldSourceRoot = env.getSourceRootPath();
+        oldDataRoot = env.getDataRootPath();
+        oldCtags = env.getCtags();
+
+        root = FileUtilities.createTemporaryDirectory("indexdb");
+        sourceRoot = new File(root, "src");
+        dataRoot = new File(root, "data");
+        assertTrue(sourceRoot.mkdir());
+        assertTrue(dataRoot.mkdir());
+        File ctags = new File(root, "ctags.sh");
+        write(ctags, "if [ \"$1\" = --version ]; then echo Exuberant Ctags; exit; fi\n"
+                + "while read f; do\n"
+                + "  s=`basename \"$f\" .c`\n"
+                + "  printf '%s\\t%s\\t/^int %s;$/;\"\\tvariable\\tline:1\\n' \"$s\" \"$f\" \"$s\"\n"
+                + "  echo __ctags_done_with_file__\n"
+                + "done\n");
+        assertTrue(ctags.setExecutable(true));
+
+        env.setSourceRoot(sourceRoot.getAbsolutePath());
+        env.setDataRoot(dataRoot.getAbsolutePath());
+        env.setCtags(ctags.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        env.setCtags(oldCtags);
+        if (oldSourceRoot != null) {
+            env.setSourceRoot(oldSourceRoot);
+        }
+        if (oldDataRoot != null) {
+            env.setDataRoot(oldDataRoot);
+        }
+        FileUtilities.removeDirs(root);
+    }
+
+    private boolean isSuggested(String word) throws IOException {
+        try (Directory dir = FSDirectory.open(new File(dataRoot, "spellIndex"))) {
+            SpellChecker checker = new SpellChecker(dir);
+            try {
+                return checker.exist(word);
+            } finally {
+                checker.close();
+            }
+        }
+    }
+
+    /**
+     * An update which resumes an interrupted one rebuilds the spelling
+     * index, since the definitions of the files committed before the
+     * interruption were never added to it.
+     */
+    @Test
+    public void resumedUpdateRebuildsSpelling() throws Exception {
+        if (!new File("/bin/sh").canExecute()) {
+            return;
+        }
+        write(new File(sourceRoot, "alpha.c"), "int alpha;\n");
+        new IndexDatabase().update();
+        assertTrue(isSuggested("alpha"));
+
+        write(new File(sourceRoot, "bravo.c"), "int bravo;\n");
+        new IndexDatabase().update();
+        assertTrue(isSuggested("bravo"));
+
+        // the state left by an update interrupted after bravo.c has been
+        // committed: its definitions are in the index but not suggested
+        try (Directory dir = FSDirectory.open(new File(dataRoot, "spellIndex"));
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Version.LUCENE_36, null))) {
+            writer.deleteDocuments(new Term(SpellChecker.F_WORD, "bravo"));
+        }
+        File checkpoint = new File(new File(dataRoot, "index"), "checkpoint");
+        write(checkpoint, "/bravo.c\n");
+        assertFalse(isSuggested("bravo"));
+
+        new IndexDatabase().update();
+        assertFalse(checkpoint.exists());
+        assertTrue(isSuggested("alpha"));
+        assertTrue(isSuggested("bravo"));
+    }
+
+    /**
+     * The xref directory of removed files is removed at the end of the
+     * update, if it is empty, and not while analyzer threads may still
+     * write into it.
+     */
+    @Test
+    public void removesEmptyXrefDirectories() throws Exception {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        if (!env.isGenerateHtml()) {
+            return;
+        }
+        int oldThreads = env.getAnalyzerThreads();
+        env.setAnalyzerThreads(2);
+        try {
+            File dir = new File(sourceRoot, "sub");
+            assertTrue(dir.mkdir());
+            File file = new File(dir, "charlie.c");
+            write(file, "int charlie;\n");
+            write(new File(sourceRoot, "delta.c"), "int delta;\n");
+            new IndexDatabase().update();
+            File xrefDir = new File(new File(dataRoot, "xref"), "sub");
+            assertTrue(xrefDir.isDirectory());
+
+            assertTrue(file.delete());
+            assertTrue(dir.delete());
+            new IndexDatabase().update();
+            assertFalse(xrefDir.exists());
+            assertTrue(new File(dataRoot, "xref").isDirectory());
+        } finally {
+            env.setAnalyzerThreads(oldThreads);
+        }
+    }
+
+    /**
+     * The xref of a file which is touched, but whose content is unchanged,
+     * is kept and touched as well, so that it isn't older than the file.
+     */
+    @Test
+    public void touchesReusedXref() throws Exception {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        if (!env.isGenerateHtml()) {
+            return;
+        }
+        File file = new File(sourceRoot, "echo.c");
+        write(file, "int echo;\n");
+        new IndexDatabase().update();
+        File xref = new File(new File(dataRoot, "xref"), env.isCompressXref() ? "echo.c.gz" : "echo.c");
+        assertTrue(xref.isFile());
+
+        long now = System.currentTimeMillis();
+        assertTrue(xref.setLastModified(now - 100000));
+        assertTrue(file.setLastModified(now - 50000));
+        new IndexDatabase().update();
+        assertTrue(xref.lastModified() >= file.lastModified());
+    }
+}
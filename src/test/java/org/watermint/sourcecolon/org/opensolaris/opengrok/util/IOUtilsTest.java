@@ -0,0 +1,76 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+package org.watermint.sourcecolon.org.opensolaris.opengrok.util;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit test for org.watermint.sourcecolon.org.opensolaris.opengrok.util.IOUtils
+ */
+public class IOUtilsTest {
+
+    private static boolean isUTF8(int... bytes) {
+        byte[] buf = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            buf[i] = (byte) bytes[i];
+        }
+        return IOUtils.isUTF8(buf, buf.length);
+    }
+
+    @Test
+    public void checksUTF8() {
+        assertTrue(isUTF8('a', 'b', 'c'));
+        assertTrue(isUTF8(0xC3, 0xA9));
+        assertTrue(isUTF8(0xE2, 0x82, 0xAC));
+        assertTrue(isUTF8(0xF0, 0x9D, 0x84, 0x9E));
+        // cut by the end of the bytes read
+        assertTrue(isUTF8('a', 0xE2, 0x82));
+
+        assertFalse(isUTF8('a', 0, 'b'));
+        assertFalse(isUTF8(0xE9, 't', 0xE9));
+        assertFalse(isUTF8(0xC0, 0xAF));
+        assertFalse(isUTF8(0xE0, 0x80, 0xAF));
+        assertFalse(isUTF8(0xED, 0xA0, 0x80));
+        assertFalse(isUTF8(0xF4, 0x90, 0x80, 0x80));
+        assertFalse(isUTF8(0xFF, 0xFE, 'a', 0));
+    }
+
+    @Test
+    public void detectsCharsetAndResetsStream() throws Exception {
+        byte[] utf8 = "r\u00e9sum\u00e9 of the caf\u00e9 menu".getBytes("UTF-8");
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(utf8));
+        assertEquals("UTF-8", IOUtils.detectCharset(in));
+        assertEquals('r', in.read());
+
+        byte[] utf16 = "\uFEFFsome text in UTF-16 which has a byte order mark".getBytes("UTF-16BE");
+        in = new BufferedInputStream(new ByteArrayInputStream(utf16));
+        assertEquals("UTF-16BE", IOUtils.detectCharset(in));
+        assertEquals(0xFE, in.read());
+    }
+}
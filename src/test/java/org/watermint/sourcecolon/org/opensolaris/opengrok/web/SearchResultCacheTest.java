@@ -0,0 +1,128 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Portions Copyright (c) 2013 Takayuki Okazaki.
+ */
+
+package org.watermint.sourcecolon.org.opensolaris.opengrok.web;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SearchResultCacheTest {
+
+    private final SearchResultCache cache = SearchResultCache.getInstance();
+    private String key;
+
+    @Before
+    public void setUp() {
+        cache.clear();
+        Map<String, String> queries = new HashMap<>();
+        queries.put("defs", "main");
+        key = SearchResultCache.getKey(queries, Arrays.asList("b", "a"), SortOrder.RELEVANCY);
+    }
+
+    private static TopDocs docs(int totalHits, int n) {
+        ScoreDoc[] hits = new ScoreDoc[n];
+        for (int i = 0; i < n; i++) {
+            hits[i] = new ScoreDoc(i, 1.0f);
+        }
+        return new TopDocs(totalHits, hits, 1.0f);
+    }
+
+    @Test
+    public void testKey() {
+        Map<String, String> queries = Collections.singletonMap("defs", "main ");
+        assertEquals(key, SearchResultCache.getKey(queries, Arrays.asList("a", "b"), SortOrder.RELEVANCY));
+        assertFalse(key.equals(SearchResultCache.getKey(queries, Arrays.asList("a", "b"), SortOrder.BY_PATH)));
+        assertFalse(key.equals(SearchResultCache.getKey(queries, Arrays.asList("a"), SortOrder.RELEVANCY)));
+    }
+
+    @Test
+    public void testGetPut() {
+        assertNull(cache.get(key, "1", 10));
+        cache.put(key, "1", docs(100, 20));
+
+        TopDocs cached = cache.get(key, "1", 10);
+        assertEquals(100, cached.totalHits);
+        assertEquals(10, cached.scoreDocs.length);
+        // more hits than cached have to be searched
+        assertNull(cache.get(key, "1", 30));
+        // another generation of the index
+        assertNull(cache.get(key, "2", 10));
+        assertNull(cache.get(key, "1", 10));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void testAllHitsCached() {
+        cache.put(key, "1", docs(5, 5));
+        assertEquals(5, cache.get(key, "1", 25).scoreDocs.length);
+    }
+
+    @Test
+    public void testStatisticsLogged() {
+        final List<String> messages = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                messages.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(SearchResultCache.class.getName());
+        logger.addHandler(handler);
+        try {
+            cache.put(key, "1", docs(5, 5));
+            for (int i = 1; i < SearchResultCache.STATS_INTERVAL; i++) {
+                cache.get(key, "1", 5);
+            }
+            assertTrue(messages.isEmpty());
+            cache.get(key, "2", 5);
+            assertEquals(1, messages.size());
+            assertTrue(messages.get(0), messages.get(0).contains("999 hits, 1 misses"));
+        } finally {
+            logger.removeHandler(handler);
+        }
+    }
+}
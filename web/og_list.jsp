@@ -22,6 +22,12 @@ Portions Copyright (c) 2013 Takayuki Okazaki.
 
 --%>
 <%@ page contentType="text/html; charset=UTF-8" pageEncoding="UTF-8" session="false" errorPage="og_error.jsp" %>
+<%@ page import="org.watermint.sourcecolon.org.opensolaris.opengrok.web.PageConfig" %>
+<%
+  if (PageConfig.get(request).isNotModified(response)) {
+    return;
+  }
+%>
 <%@ taglib prefix="t" tagdir="/WEB-INF/tags" %>
 <%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
 <t:layout pageTitle="Search" pageScript="updateNavigationSymbolContents(); prettyPrint();">
@@ -61,7 +67,7 @@ Portions Copyright (c) 2013 Takayuki Okazaki.
       </c:forEach>
     </c:when>
     <c:when test="${pageConfig.currentDataFile != null}">
-      <pre class="prettyprint linenums"><code>${pageConfig.fileContents(pageConfig.currentDataFile)}</code></pre>
+      <pre class="prettyprint linenums"><code>${pageConfig.writeXref(pageContext.out)}</code></pre>
     </c:when>
     <c:when test="${pageConfig.image}">
       <img src="${rawPath}"/>
@@ -70,7 +76,7 @@ Portions Copyright (c) 2013 Takayuki Okazaki.
       ${pageConfig.htmlContents}
     </c:when>
     <c:when test="${pageConfig.plain}">
-      <pre class="prettyprint linenums"><code>${pageConfig.plainContents}</code></pre>
+      <pre class="prettyprint linenums"><code>${pageConfig.writeXref(pageContext.out)}</code></pre>
     </c:when>
     <c:otherwise>
       Download: <a href="${rawPath}">${pageConfig.resourceFile.name}</a>
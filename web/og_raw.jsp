@@ -36,12 +36,14 @@ org.watermint.sourcecolon.org.opensolaris.opengrok.web.PageConfig"
   {
     PageConfig cfg = PageConfig.get(request);
 
+    if (cfg.isNotModified(response)) {
+      return;
+    }
     File f = cfg.getResourceFile();
     InputStream in = null;
     try {
         in = new FileInputStream(f);
         response.setContentLength((int) f.length());
-        response.setDateHeader("Last-Modified", f.lastModified());
     } catch (Exception e) {
         response.sendError(HttpServletResponse.SC_NOT_FOUND);
       return;
@@ -78,6 +78,10 @@ Portions Copyright (c) 2013 Takayuki Okazaki.
 
       <table class="table table-striped">${pageConfig.currentSearchHelper.searchResultTable}</table>
 
+      <c:if test="${pageConfig.currentSearchHelper.partial}">
+        <div class="alert">The search took too long: the results are partial.</div>
+      </c:if>
+
       <c:if test="${pageConfig.currentSearchHelper.pagingEnabled}">
         <div class="pagination">
           <ul>